@@ -0,0 +1,125 @@
+package core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the computer choosing a move at several node budgets, and of the Monte Carlo player at several
+ * playout budgets. The transposition table is cleared before every move so each one is searched from scratch, the
+ * same as the first move of a new game.
+ *
+ * @author Chris Burdett
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Connect4ComputerBenchmark
+{
+    /**
+     * Creates a game at the middle-game position of the engine benchmarks
+     *
+     * @return game with player 1 to move
+     */
+    static Connect4 middleGame()
+    {
+        Connect4 game = new Connect4();
+        for (int col : Connect4EngineBenchmark.MIDDLE_GAME)
+        {
+            game.play(col);
+        }
+        return game;
+    }
+
+    /**
+     * Alpha-beta computer player limited to a number of positions per move
+     */
+    @State(Scope.Thread)
+    public static class Search
+    {
+        @Param({"1000", "10000", "100000"})
+        public long nodeBudget;
+
+        private Connect4 opening;
+        private Connect4 middleGame;
+        private Connect4TranspositionTable table;
+        private Connect4ComputerPlayer computer;
+
+        @Setup
+        public void setUp()
+        {
+            opening = new Connect4();
+            opening.play(4);
+            middleGame = middleGame();
+            table = new Connect4TranspositionTable(Connect4ComputerPlayer.DEFAULT_TABLE_BYTES);
+            computer = new Connect4ComputerPlayer(Connect4ComputerPlayer.MAX_DEPTH, table);
+            computer.setNodeBudget(nodeBudget);
+        }
+
+        @Setup(Level.Invocation)
+        public void clearTable()
+        {
+            table.clear();
+        }
+    }
+
+    /**
+     * Monte Carlo player limited to a number of random games per move
+     */
+    @State(Scope.Thread)
+    public static class MonteCarlo
+    {
+        @Param({"1000", "10000"})
+        public long playouts;
+
+        private Connect4 middleGame;
+        private Connect4MonteCarloPlayer player;
+
+        @Setup
+        public void setUp()
+        {
+            middleGame = middleGame();
+            player = new Connect4MonteCarloPlayer(Connect4MonteCarloPlayer.DEFAULT_POOL_SIZE, 1);
+            player.setPlayoutBudget(playouts);
+        }
+
+        @TearDown
+        public void tearDown()
+        {
+            player.shutdown();
+        }
+    }
+
+    @Benchmark
+    public int chooseOpeningMove(Search state)
+    {
+        return state.computer.chooseCol(state.opening);
+    }
+
+    @Benchmark
+    public int chooseMiddleGameMove(Search state)
+    {
+        return state.computer.chooseCol(state.middleGame);
+    }
+
+    @Benchmark
+    public int monteCarloMiddleGameMove(MonteCarlo state)
+    {
+        return state.player.chooseCol(state.middleGame);
+    }
+}
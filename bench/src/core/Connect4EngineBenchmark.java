@@ -0,0 +1,93 @@
+package core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the game engine calls made for every move: checking for a winner, validating a column and dropping
+ * a piece for each player. Every benchmark starts from the same middle-game position and puts it back, so the
+ * numbers do not depend on how far a game has gone.
+ *
+ * The benchmarks live in the SER216-bench module, which needs JMH and annotation processing. From the command line,
+ * build them with mvn -f bench/pom.xml package and run java -jar bench/target/benchmarks.jar, optionally followed
+ * by a class name to run just one group. In the IDE, run org.openjdk.jmh.Main with the same arguments.
+ *
+ * @author Chris Burdett
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Connect4EngineBenchmark implements Connect4Constants
+{
+    //columns, starting at 1, played to reach the benchmark position; nobody has won yet
+    static final int[] MIDDLE_GAME = {4, 4, 3, 5, 2, 2, 5, 3, 6, 6, 3, 4, 5, 1};
+
+    private Connect4 game;
+
+    @Setup
+    public void setUp()
+    {
+        game = new Connect4();
+        for (int col : MIDDLE_GAME)
+        {
+            game.play(col);
+        }
+    }
+
+    @Benchmark
+    public boolean winner()
+    {
+        return game.winner(PLAYER1TOKEN) | game.winner(PLAYER2TOKEN);
+    }
+
+    @Benchmark
+    public void isValid(Blackhole blackhole)
+    {
+        for (int col = -1; col <= game.getCOLS(); col++)
+        {
+            blackhole.consume(game.isValid(col));
+        }
+    }
+
+    @Benchmark
+    public int playerTurns()
+    {
+        //the middle-game position has player 1 to move
+        game.player1Turn(7);
+        game.player2Turn(7);
+        int status = game.getStatus();
+        game.undo();
+        game.undo();
+        return status;
+    }
+
+    @Benchmark
+    public int playAndUndo()
+    {
+        int status = game.play(1);
+        game.undo();
+        return status;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long perft4()
+    {
+        return new Connect4Perft().perft(game, 4);
+    }
+}
@@ -0,0 +1,97 @@
+package core;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the server writing a move and the game status to both players with Connect4Server.sendData. The
+ * streams are buffered like the server's and write into memory instead of a socket, counting how many times the
+ * stream underneath is written to, since on a socket every one of those writes is a separate system call. Each
+ * player should see one write per move.
+ *
+ * @author Chris Burdett
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Connect4ProtocolBenchmark
+{
+    private final Connect4Server.sendData send = new Connect4Server.sendData();
+    private CountingStream player1;
+    private CountingStream player2;
+    private DataOutputStream toPlayer1;
+    private DataOutputStream toPlayer2;
+
+    /**
+     * Number of writes reaching the streams underneath, reported next to the time of each move
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Writes
+    {
+        public long writes;
+
+        @Setup(Level.Iteration)
+        public void clear()
+        {
+            writes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp()
+    {
+        player1 = new CountingStream();
+        player2 = new CountingStream();
+        toPlayer1 = new DataOutputStream(new BufferedOutputStream(player1));
+        toPlayer2 = new DataOutputStream(new BufferedOutputStream(player2));
+    }
+
+    @Benchmark
+    public void sendMoveToBothPlayers(Writes writes)
+    {
+        send.sendMoveToBothPlayers(toPlayer1, toPlayer2, 3, 5, true, false, Connect4Constants.CONTINUE);
+        writes.writes += player1.writes + player2.writes;
+        player1.writes = 0;
+        player2.writes = 0;
+    }
+
+    /**
+     * Stream that throws the bytes away and counts the calls made to it
+     */
+    static class CountingStream extends OutputStream
+    {
+        private long writes;
+
+        @Override
+        public void write(int b)
+        {
+            writes++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length)
+        {
+            writes++;
+        }
+    }
+}
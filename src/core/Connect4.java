@@ -8,14 +8,18 @@ package core;
  */
 public class Connect4 implements Connect4Constants
 {
-    private final int ROWS = 6;
-    private final int COLS = 7;
+    private final int ROWS;
+    private final int COLS;
 
+    private Connect4BitBoard board;
     private char[][] matrix;
     private int turn;
     private char player1Token, player2Token;
     private int player1, player2;
     private int colDrop,rowDrop;
+    private int status;
+    private final long[] history;
+    private int moveCount;
 
     /**
      * Create a Connect4 object with an empty board, two players, and
@@ -23,12 +27,29 @@ public class Connect4 implements Connect4Constants
      */
     public Connect4()
     {
+        this(Connect4Geometry.STANDARD);
+    }
+
+    /**
+     * Create a Connect4 object for a board of any size, such as 8 columns by 7 rows
+     * or five in a row, with an empty board and no moves made yet
+     *
+     * @param geometry size of the board and number in a row needed to win
+     */
+    public Connect4(Connect4Geometry geometry)
+    {
+        ROWS = geometry.getHeight();
+        COLS = geometry.getWidth();
+        board = new Connect4BitBoard(geometry);
         matrix = new char[ROWS][COLS];
         turn = 1;
         player1 = PLAYER1;
         player2 = PLAYER2;
         player1Token = PLAYER1TOKEN;
         player2Token = PLAYER2TOKEN;
+        status = CONTINUE;
+        history = new long[ROWS * COLS];
+        moveCount = 0;
 
         for(int i = 0; i <matrix.length; i++)
         {
@@ -57,6 +78,16 @@ public class Connect4 implements Connect4Constants
         return COLS;
     }
 
+    /**
+     * Get the size of the board and the number in a row needed to win
+     *
+     * @return geometry of the game board
+     */
+    public Connect4Geometry getGeometry()
+    {
+        return board.getGeometry();
+    }
+
     /**
      * Get the column that the piece will be dropped into
      * @return the column that the piece will be dropped into
@@ -93,7 +124,38 @@ public class Connect4 implements Connect4Constants
     }
 
     /**
-     * Get the board containing all of the current pieces
+     * Get the bitboard holding the pieces of both players
+     *
+     * @return the bitboard behind the game
+     */
+    public Connect4BitBoard getBoard()
+    {
+        return board;
+    }
+
+    /**
+     * Get the hash of the current position
+     *
+     * @return 64-bit Zobrist hash of the position
+     */
+    public long getHash()
+    {
+        return board.getHash();
+    }
+
+    /**
+     * Get a key that is shared by the current position and its mirror image
+     *
+     * @return canonical 64-bit key of the position
+     */
+    public long getCanonicalKey()
+    {
+        return board.getCanonicalKey();
+    }
+
+    /**
+     * Get the board containing all of the current pieces. The matrix is the game's own and changes as pieces
+     * are dropped; use getPosition() for a snapshot that can be handed to other threads.
      *
      * @return the current state of the game board
      */
@@ -102,6 +164,17 @@ public class Connect4 implements Connect4Constants
         return matrix;
     }
 
+    /**
+     * Get an immutable snapshot of the current position, without copying the board
+     *
+     * @return current position
+     * @throws IllegalArgumentException if the board is too large to fit in a position
+     */
+    public Connect4Position getPosition()
+    {
+        return Connect4Position.of(board);
+    }
+
     /**
      * Get player one
      * @return player one
@@ -135,6 +208,24 @@ public class Connect4 implements Connect4Constants
         return player2Token;
     }
 
+    /**
+     * The current player drops their piece into a column of their choice. The
+     * piece drops in the lowest available row in that column and the turn count
+     * then increments. A full or nonexistent column is reported through the
+     * result instead of an exception.
+     *
+     * @param colSelection column the player drops their piece into, starting at 1
+     * @return INVALIDMOVE if the piece cannot be placed, otherwise the status of the game after the move
+     */
+    public int play(int colSelection)
+    {
+        if (getCurPlayer() == player1)
+        {
+            return dropPiece(colSelection, player1, player1Token) ? status : INVALIDMOVE;
+        }
+        return dropPiece(colSelection, player2, player2Token) ? status : INVALIDMOVE;
+    }
+
     /**
      * Player1 drops their piece into a column of their choice. The piece
      * drops in the lowest available row in that column. The turn count
@@ -145,23 +236,10 @@ public class Connect4 implements Connect4Constants
      */
     public void player1Turn(int colSelection) throws ArrayIndexOutOfBoundsException
     {
-        if(!isValid(colSelection-1))
+        if (!dropPiece(colSelection, player1, player1Token))
         {
             throw new ArrayIndexOutOfBoundsException();
         }
-
-        for(int i = matrix.length-1; i >= 0; i--)
-        {
-
-            if (matrix[i][colSelection-1] == ' ')
-            {
-                matrix[i][colSelection-1] = player1Token;
-                colDrop = i;
-                rowDrop = colSelection-1;
-                break;
-            }
-        }
-        incrementTurn();
     }
 
 
@@ -175,22 +253,143 @@ public class Connect4 implements Connect4Constants
      */
     public void player2Turn(int colSelection) throws ArrayIndexOutOfBoundsException
     {
-        if(!isValid(colSelection-1))
+        if (!dropPiece(colSelection, player2, player2Token))
         {
             throw new ArrayIndexOutOfBoundsException();
         }
+    }
+
+    /**
+     * Get the columns that still have room for a piece
+     *
+     * @return mask with bit i set if column i, starting at 0, is not full
+     */
+    public int legalMovesMask()
+    {
+        return board.legalMovesMask();
+    }
 
-        for(int i = matrix.length-1; i >= 0; i--)
+    /**
+     * Drops a piece into the bitboard and mirrors it onto the character matrix
+     * so that getMatrix() stays current.
+     *
+     * @param colSelection column the player drops their piece into, starting at 1
+     * @param player player dropping the piece
+     * @param token token of the player dropping the piece
+     * @return true if the piece was placed, false if the column is full or does not exist
+     */
+    private boolean dropPiece(int colSelection, int player, char token)
+    {
+        if(!isValid(colSelection-1))
         {
-            if (matrix[i][colSelection-1] == ' ')
-            {
-                matrix[i][colSelection-1] = player2Token;
-                colDrop = i;
-                rowDrop = colSelection-1;
-                break;
-            }
+            return false;
         }
+
+        history[moveCount++] = packMove(colSelection-1, player);
+        int bottomRow = board.drop(colSelection-1, player);
+        int row = ROWS - 1 - bottomRow;
+        matrix[row][colSelection-1] = token;
+        colDrop = row;
+        rowDrop = colSelection-1;
         incrementTurn();
+        updateStatus(colSelection-1, bottomRow, player);
+        return true;
+    }
+
+    /**
+     * Takes back the last piece that was dropped. The board, turn count, last
+     * drop and game status go back to exactly what they were before that move.
+     *
+     * @return true if a move was taken back, false if no moves have been made
+     */
+    public boolean undo()
+    {
+        if (moveCount == 0)
+        {
+            return false;
+        }
+
+        long move = history[--moveCount];
+        int col = (int) (move & 0xF);
+        int row = ROWS - 1 - board.undrop(col);
+        matrix[row][col] = ' ';
+        status = (int) ((move >>> 6) & 0x7);
+        colDrop = (int) ((move >>> 9) & 0x7F);
+        rowDrop = (int) ((move >>> 16) & 0xF);
+        turn = (int) (move >>> 20);
+        return true;
+    }
+
+    /**
+     * Get the number of pieces that have been dropped and not taken back
+     *
+     * @return number of moves in the move history
+     */
+    public int getMoveCount()
+    {
+        return moveCount;
+    }
+
+    /**
+     * Packs a move together with the state it replaces into a single history entry.
+     * Bits 0-3 hold the column, 4-5 the player, 6-8 the previous status, 9-15 the
+     * previous colDrop, 16-19 the previous rowDrop and the rest the previous turn.
+     *
+     * @param col column the piece is dropped into, starting at 0
+     * @param player player dropping the piece
+     * @return history entry for the move
+     */
+    private long packMove(int col, int player)
+    {
+        return col | (player << 4) | (status << 6) | (colDrop << 9) | (rowDrop << 16) | ((long) turn << 20);
+    }
+
+    /**
+     * Updates the status of the game after a piece is dropped. Only the lines
+     * through the new piece are checked. Once a player has won, the status
+     * no longer changes.
+     *
+     * @param col column the piece was dropped into, starting at 0
+     * @param row row the piece landed in, 0 is the bottom row
+     * @param player player that dropped the piece
+     */
+    private void updateStatus(int col, int row, int player)
+    {
+        if (status == PLAYER1WIN || status == PLAYER2WIN)
+        {
+            return;
+        }
+
+        if (board.connects(player, col, row))
+        {
+            status = player == player1 ? PLAYER1WIN : PLAYER2WIN;
+        } else if (tieGame())
+        {
+            status = TIEGAME;
+        } else
+        {
+            status = CONTINUE;
+        }
+    }
+
+    /**
+     * Get the status of the game after the last move
+     *
+     * @return PLAYER1WIN, PLAYER2WIN, TIEGAME or CONTINUE
+     */
+    public int getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * Checks if the game has ended with a win or a tie
+     *
+     * @return true if the game is over, false if it is not
+     */
+    public boolean isGameOver()
+    {
+        return status != CONTINUE;
     }
 
     /**
@@ -202,13 +401,7 @@ public class Connect4 implements Connect4Constants
      */
     public boolean isValid(int col)
     {
-        if((col >= 0 && col < matrix[0].length) && (matrix[0][col] == ' '))
-        {
-            return true;
-        } else
-        {
-            return false;
-        }
+        return board.canPlay(col);
     }
 
     /**
@@ -217,74 +410,25 @@ public class Connect4 implements Connect4Constants
      */
     public boolean tieGame()
     {
-        return turn == 43;
+        return turn == ROWS * COLS + 1;
     }
 
     /**
-     * Checks the game board to see if there are four player pieces in a row.
+     * Checks the game board to see if a player has enough pieces in a row to win.
      * Checks for horizontal, vertical, up-right diagonal, and down-right
      * diagonal
      *
-     * @param player to check if they have four in a row
-     * @return true if player has 4 in a row, false if they don't
+     * @param player to check if they have enough in a row
+     * @return true if player has a winning line, false if they don't
      */
     public boolean winner(char player)
     {
-        //check horizontal
-        for(int i = 0; i < matrix.length; i++)
-        {
-            for(int j = 0; j < matrix[0].length-3; j++)
-            {
-                if (matrix[i][j] == player &&
-                        matrix[i][j + 1] == player &&
-                        matrix[i][j + 2] == player &&
-                        matrix[i][j + 3] == player)
-                {
-                    return true;
-                }
-            }
-        }
-        //check vertical
-        for(int i = 0; i < matrix.length - 3; i++)
-        {
-            for (int j = 0; j < matrix[0].length; j++)
-            {
-                if (matrix[i][j] == player &&
-                        matrix[i + 1][j] == player &&
-                        matrix[i + 2][j] == player &&
-                        matrix[i + 3][j] == player)
-                {
-                    return true;
-                }
-            }
-        }
-        //check diagonal up, right
-        for(int i = 3; i < matrix.length; i++)
+        if (player == player1Token)
         {
-            for (int j = 0; j < matrix[0].length-3; j++)
-            {
-                if (matrix[i][j] == player &&
-                        matrix[i - 1][j + 1] == player &&
-                        matrix[i - 2][j + 2] == player &&
-                        matrix[i - 3][j + 3] == player)
-                {
-                    return true;
-                }
-            }
-        }
-        //check diagonal down, right
-        for(int i = 0; i < matrix.length - 3; i++)
+            return board.isWin(player1);
+        } else if (player == player2Token)
         {
-            for (int j = 0; j < matrix[0].length-3; j++)
-            {
-                if (matrix[i][j] == player &&
-                        matrix[i + 1][j + 1] == player &&
-                        matrix[i + 2][j + 2] == player &&
-                        matrix[i + 3][j + 3] == player)
-                {
-                    return true;
-                }
-            }
+            return board.isWin(player2);
         }
         return false;
     }
@@ -0,0 +1,361 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Plays two computer players against each other many times on a fixed number of threads and reports the
+ * difference in strength as Elo, so a change that makes the engine faster can be checked for making it weaker.
+ * Since it keeps every thread busy searching, the games per second it reports also work as a throughput benchmark.
+ *
+ * Every game starts from an opening taken from a suite, and each opening is played twice with the players
+ * swapping colours, so neither player gains from moving first or from a lucky opening. Each thread creates its
+ * own pair of players from the suppliers, since players keep search state between moves.
+ *
+ * @author Chris Burdett
+ * @version 1.0
+ */
+public class Connect4Arena implements Connect4Constants
+{
+    public static final int DEFAULT_GAMES = 686;
+    public static final int DEFAULT_OPENING_PLIES = 3;
+    public static final long PLAYER_TABLE_BYTES = 4L * 1024 * 1024;
+
+    //a game scoring 1 for a win, 0.5 for a draw and 0 for a loss, from the first player's point of view
+    private static final int WIN = 2;
+    private static final int DRAW = 1;
+    private static final int LOSS = 0;
+
+    private final Supplier<? extends Connect4Player> first;
+    private final Supplier<? extends Connect4Player> second;
+    private final int threads;
+
+    /**
+     * Create an arena for two players
+     *
+     * @param first creates the player the results are reported for
+     * @param second creates its opponent
+     * @param threads number of games played at the same time, at least 1
+     */
+    public Connect4Arena(Supplier<? extends Connect4Player> first, Supplier<? extends Connect4Player> second, int threads)
+    {
+        if (threads < 1)
+        {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.first = first;
+        this.second = second;
+        this.threads = threads;
+    }
+
+    /**
+     * Build a suite of every opening of a number of moves that does not end the game
+     *
+     * @param plies number of moves in each opening
+     * @return openings as columns starting at 1
+     */
+    public static List<int[]> openings(int plies)
+    {
+        List<int[]> suite = new ArrayList<>();
+        addOpenings(new Connect4(), new int[plies], 0, suite);
+        return suite;
+    }
+
+    /**
+     * Adds every way of finishing an opening to a suite
+     *
+     * @param game game with the first moves of the opening played, restored before returning
+     * @param moves moves of the opening so far
+     * @param played number of moves made
+     * @param suite suite to add the finished openings to
+     */
+    private static void addOpenings(Connect4 game, int[] moves, int played, List<int[]> suite)
+    {
+        if (played == moves.length)
+        {
+            suite.add(moves.clone());
+            return;
+        }
+        for (int col = 1; col <= game.getCOLS(); col++)
+        {
+            if (game.play(col) == CONTINUE)
+            {
+                moves[played] = col;
+                addOpenings(game, moves, played + 1, suite);
+            }
+            if (game.getMoveCount() > played)
+            {
+                game.undo();
+            }
+        }
+    }
+
+    /**
+     * Play a number of games, going through the openings in order and playing each one with both colour
+     * assignments before moving to the next
+     *
+     * @param openings openings to start games from, as columns starting at 1
+     * @param games number of games to play
+     * @return results from the first player's point of view
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the games
+     */
+    public Result play(List<int[]> openings, int games) throws InterruptedException
+    {
+        ThreadLocal<Connect4Player> firstPlayers = ThreadLocal.withInitial(first);
+        ThreadLocal<Connect4Player> secondPlayers = ThreadLocal.withInitial(second);
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Connect4Arena");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long start = System.nanoTime();
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < games; i++)
+        {
+            int[] opening = openings.get((i / 2) % openings.size());
+            boolean firstMovesFirst = i % 2 == 0;
+            results.add(pool.submit(() -> playGame(opening, firstPlayers.get(), secondPlayers.get(), firstMovesFirst)));
+        }
+
+        Result result = new Result();
+        try
+        {
+            for (Future<Integer> game : results)
+            {
+                result.add(game.get());
+            }
+        } catch (ExecutionException e)
+        {
+            throw new IllegalStateException("a game failed", e.getCause());
+        } finally
+        {
+            pool.shutdownNow();
+        }
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Plays one game to the end. A player that chooses a full or missing column loses.
+     *
+     * @param opening moves to start with, as columns starting at 1
+     * @param a the player results are reported for
+     * @param b its opponent
+     * @param aMovesFirst true if a plays the first piece
+     * @return WIN, DRAW or LOSS for a
+     */
+    private static int playGame(int[] opening, Connect4Player a, Connect4Player b, boolean aMovesFirst)
+    {
+        Connect4 game = new Connect4();
+        for (int col : opening)
+        {
+            game.play(col);
+        }
+        int aPlayer = aMovesFirst ? PLAYER1 : PLAYER2;
+        while (!game.isGameOver())
+        {
+            boolean aToMove = game.getCurPlayer() == aPlayer;
+            int col = (aToMove ? a : b).chooseCol(game);
+            if (game.play(col) == INVALIDMOVE)
+            {
+                return aToMove ? LOSS : WIN;
+            }
+        }
+        if (game.getStatus() == TIEGAME)
+        {
+            return DRAW;
+        }
+        return (game.getStatus() == PLAYER1WIN) == (aPlayer == PLAYER1) ? WIN : LOSS;
+    }
+
+    /**
+     * Wins, draws and losses of the first player, with the Elo difference they imply
+     */
+    public static class Result
+    {
+        private int wins;
+        private int draws;
+        private int losses;
+        private long nanos;
+
+        /**
+         * Count one game
+         *
+         * @param outcome WIN, DRAW or LOSS
+         */
+        private void add(int outcome)
+        {
+            if (outcome == WIN)
+            {
+                wins++;
+            } else if (outcome == DRAW)
+            {
+                draws++;
+            } else
+            {
+                losses++;
+            }
+        }
+
+        /**
+         * Get the number of games the first player won
+         *
+         * @return number of games
+         */
+        public int getWins()
+        {
+            return wins;
+        }
+
+        /**
+         * Get the number of games drawn
+         *
+         * @return number of games
+         */
+        public int getDraws()
+        {
+            return draws;
+        }
+
+        /**
+         * Get the number of games the first player lost
+         *
+         * @return number of games
+         */
+        public int getLosses()
+        {
+            return losses;
+        }
+
+        /**
+         * Get the number of games played
+         *
+         * @return wins, draws and losses together
+         */
+        public int getGames()
+        {
+            return wins + draws + losses;
+        }
+
+        /**
+         * Get the share of the points the first player took
+         *
+         * @return score from 0 to 1, a draw counting as half a win
+         */
+        public double getScore()
+        {
+            return getGames() > 0 ? (wins + draws / 2.0) / getGames() : 0.5;
+        }
+
+        /**
+         * Get how much stronger the first player is, in Elo
+         *
+         * @return Elo difference, infinite if one player won every game
+         */
+        public double getEloDifference()
+        {
+            return elo(getScore());
+        }
+
+        /**
+         * Get the range the true Elo difference lies in with 95% confidence, from the spread of the game scores
+         *
+         * @return lowest and highest Elo difference
+         */
+        public double[] getEloInterval()
+        {
+            int games = getGames();
+            if (games == 0)
+            {
+                return new double[]{Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY};
+            }
+            double score = getScore();
+            double variance = (wins * Math.pow(1 - score, 2) + draws * Math.pow(0.5 - score, 2)
+                    + losses * Math.pow(score, 2)) / games;
+            double margin = 1.96 * Math.sqrt(variance / games);
+            return new double[]{elo(score - margin), elo(score + margin)};
+        }
+
+        /**
+         * Get how fast the games were played across every thread
+         *
+         * @return games finished per second
+         */
+        public double getGamesPerSecond()
+        {
+            return nanos > 0 ? getGames() * 1e9 / nanos : 0;
+        }
+
+        /**
+         * Converts a score to an Elo difference with the logistic formula
+         *
+         * @param score share of the points, clamped to 0 to 1
+         * @return Elo difference
+         */
+        private static double elo(double score)
+        {
+            if (score <= 0)
+            {
+                return Double.NEGATIVE_INFINITY;
+            }
+            if (score >= 1)
+            {
+                return Double.POSITIVE_INFINITY;
+            }
+            return -400 * Math.log10(1 / score - 1);
+        }
+
+        @Override
+        public String toString()
+        {
+            double[] interval = getEloInterval();
+            return String.format("+%d =%d -%d, score %.3f, Elo %+.1f (95%% %+.1f to %+.1f), %.1f games/s",
+                    wins, draws, losses, getScore(), getEloDifference(), interval[0], interval[1], getGamesPerSecond());
+        }
+    }
+
+    /**
+     * Create a supplier of computer players from a description: a search depth, optionally followed by a
+     * colon and a time budget in milliseconds, such as 8 or 12:50
+     *
+     * @param spec description of the player
+     * @return supplier of new players, each with its own transposition table
+     */
+    public static Supplier<Connect4ComputerPlayer> computer(String spec)
+    {
+        String[] parts = spec.split(":");
+        int depth = Integer.parseInt(parts[0]);
+        long millis = parts.length > 1 ? Long.parseLong(parts[1]) : 0;
+        return () -> {
+            Connect4ComputerPlayer computer = new Connect4ComputerPlayer(depth,
+                    new Connect4TranspositionTable(PLAYER_TABLE_BYTES));
+            computer.setTimeBudget(millis);
+            return computer;
+        };
+    }
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        if (args.length < 2)
+        {
+            System.out.println("Usage: java core.Connect4Arena player player [games] [threads] [opening plies]");
+            System.out.println("A player is a search depth, optionally with a time budget in ms, such as 8 or 12:50");
+            return;
+        }
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_GAMES;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        int plies = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_OPENING_PLIES;
+
+        List<int[]> suite = openings(plies);
+        System.out.println(args[0] + " vs " + args[1] + ": " + games + " games from " + suite.size()
+                + " openings on " + threads + " threads");
+        Connect4Arena arena = new Connect4Arena(computer(args[0]), computer(args[1]), threads);
+        System.out.println(arena.play(suite, games));
+    }
+}
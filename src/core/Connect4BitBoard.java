@@ -0,0 +1,585 @@
+package core;
+
+/**
+ * Bitboard representation of a Connect4 board. Each player's pieces are stored as the set bits of a single long.
+ * Columns are laid out one after another, HEIGHT + 1 bits per column, with the bottom row in the lowest bit of
+ * each column. The extra bit on top of each column is always empty, which keeps shifted lines from wrapping into
+ * the next column when checking for four in a row.
+ *
+ * A board can also be created for any Connect4Geometry. Boards whose layout is larger than 64 bits keep the
+ * columns that do not fit in a second long for each player. The static helpers and the methods that return
+ * masks, such as getStones() and getMask(), describe the standard board only, and for other boards they only
+ * cover the first long; code that works on any board uses the instance methods that take columns and rows.
+ *
+ * @author Chris Burdett
+ * @version 1.0
+ */
+public class Connect4BitBoard implements Connect4Constants
+{
+    public static final int WIDTH = COLUMNS;
+    public static final int HEIGHT = ROWS;
+    public static final int H1 = HEIGHT + 1;
+
+    //bit distance between neighbouring cells: vertical, horizontal, diagonal up right, diagonal down right
+    private static final int[] DIRECTIONS = {1, H1, H1 + 1, H1 - 1};
+    private static final int[] LINE_DIRECTIONS = {H1, H1 + 1, H1 - 1};
+    //column and row steps along a line: vertical, horizontal, diagonal up right, diagonal down right
+    private static final int[][] STEPS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+    //random keys for each player on each cell, generated from a fixed seed so hashes are the same on every run
+    private static final long[] ZOBRIST = new long[2 * Connect4Geometry.MAX_BITS];
+
+    static
+    {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < ZOBRIST.length; i++)
+        {
+            //splitmix64
+            seed += 0x9E3779B97F4A7C15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            ZOBRIST[i] = z ^ (z >>> 31);
+        }
+    }
+
+    //every playable cell on the board
+    public static final long BOARD_MASK = boardMask();
+    //bottom cell of every column
+    public static final long BOTTOM_MASK = BOARD_MASK & ~(BOARD_MASK << 1);
+
+    private final Connect4Geometry geometry;
+    private final int width;
+    private final int height;
+    private final int columnBits;
+    private final int winLength;
+    private final boolean standard;
+    private final int[] directions;
+    private long player1Stones;
+    private long player2Stones;
+    //pieces on bits 64 and up, only used by boards that do not fit in one long
+    private long player1High;
+    private long player2High;
+    private final int[] heights;
+    private int legalColumns;
+    private int moveCount;
+    private long hash;
+    private long mirrorHash;
+
+    /**
+     * Create an empty standard board
+     */
+    public Connect4BitBoard()
+    {
+        this(Connect4Geometry.STANDARD);
+    }
+
+    /**
+     * Create an empty board of any size
+     *
+     * @param geometry size of the board and number in a row needed to win
+     */
+    public Connect4BitBoard(Connect4Geometry geometry)
+    {
+        this.geometry = geometry;
+        width = geometry.getWidth();
+        height = geometry.getHeight();
+        columnBits = geometry.getColumnBits();
+        winLength = geometry.getWinLength();
+        standard = geometry.isStandard();
+        directions = new int[]{1, columnBits, columnBits + 1, columnBits - 1};
+        player1Stones = 0L;
+        player2Stones = 0L;
+        player1High = 0L;
+        player2High = 0L;
+        heights = new int[width];
+        legalColumns = (1 << width) - 1;
+        moveCount = 0;
+        //boards of different sizes never share a hash, so they can share a transposition table
+        hash = standard ? 0L : ZOBRIST[0] * geometry.hashCode();
+        mirrorHash = hash;
+    }
+
+    /**
+     * Create a copy of a board that can be changed without affecting the original
+     *
+     * @param other board to copy
+     */
+    public Connect4BitBoard(Connect4BitBoard other)
+    {
+        geometry = other.geometry;
+        width = other.width;
+        height = other.height;
+        columnBits = other.columnBits;
+        winLength = other.winLength;
+        standard = other.standard;
+        directions = other.directions;
+        player1Stones = other.player1Stones;
+        player2Stones = other.player2Stones;
+        player1High = other.player1High;
+        player2High = other.player2High;
+        heights = other.heights.clone();
+        legalColumns = other.legalColumns;
+        moveCount = other.moveCount;
+        hash = other.hash;
+        mirrorHash = other.mirrorHash;
+    }
+
+    /**
+     * Get the size of the board and the number in a row needed to win
+     *
+     * @return geometry of the board
+     */
+    public Connect4Geometry getGeometry()
+    {
+        return geometry;
+    }
+
+    /**
+     * Checks if each player's pieces fit in one long, so getStones() and getMask() describe the whole board
+     *
+     * @return true if the board's layout is at most 64 bits
+     */
+    public boolean fitsInLong()
+    {
+        return geometry.fitsInLong();
+    }
+
+    /**
+     * Builds the mask of every playable cell on the board
+     *
+     * @return mask with every cell except the spare bit on top of each column set
+     */
+    private static long boardMask()
+    {
+        long mask = 0L;
+        for (int col = 0; col < WIDTH; col++)
+        {
+            mask |= columnMask(col);
+        }
+        return mask;
+    }
+
+    /**
+     * Get the bit index of a cell on the board
+     *
+     * @param col column of the cell, 0 is the leftmost column
+     * @param row row of the cell, 0 is the bottom row
+     * @return index of the bit representing the cell
+     */
+    public static int bitIndex(int col, int row)
+    {
+        return col * H1 + row;
+    }
+
+    /**
+     * Get a mask with only the bottom cell of a column set
+     *
+     * @param col column of the board
+     * @return mask of the bottom cell of the column
+     */
+    public static long bottomMask(int col)
+    {
+        return 1L << (col * H1);
+    }
+
+    /**
+     * Get a mask with only the top playable cell of a column set
+     *
+     * @param col column of the board
+     * @return mask of the top cell of the column
+     */
+    public static long topMask(int col)
+    {
+        return 1L << (col * H1 + HEIGHT - 1);
+    }
+
+    /**
+     * Get a mask with every playable cell of a column set
+     *
+     * @param col column of the board
+     * @return mask of the whole column
+     */
+    public static long columnMask(int col)
+    {
+        return ((1L << HEIGHT) - 1) << (col * H1);
+    }
+
+    /**
+     * Checks if a set of pieces contains four in a row. Checks for horizontal, vertical, up-right diagonal,
+     * and down-right diagonal by shifting the pieces onto themselves.
+     *
+     * @param stones pieces belonging to a single player
+     * @return true if there are four in a row, false if there are not
+     */
+    public static boolean hasFourInARow(long stones)
+    {
+        //check horizontal
+        long m = stones & (stones >>> H1);
+        if ((m & (m >>> (2 * H1))) != 0)
+        {
+            return true;
+        }
+        //check vertical
+        m = stones & (stones >>> 1);
+        if ((m & (m >>> 2)) != 0)
+        {
+            return true;
+        }
+        //check diagonal up, right
+        m = stones & (stones >>> (H1 + 1));
+        if ((m & (m >>> (2 * (H1 + 1)))) != 0)
+        {
+            return true;
+        }
+        //check diagonal down, right
+        m = stones & (stones >>> (H1 - 1));
+        return (m & (m >>> (2 * (H1 - 1)))) != 0;
+    }
+
+    /**
+     * Finds every empty cell that would give a player four in a row if they had a piece there,
+     * whether or not the cell can be played into yet.
+     *
+     * @param stones pieces belonging to the player
+     * @param mask every occupied cell on the board
+     * @return mask of the empty cells that complete four in a row for the player
+     */
+    public static long winningCells(long stones, long mask)
+    {
+        //vertical
+        long cells = (stones << 1) & (stones << 2) & (stones << 3);
+
+        for (int direction : LINE_DIRECTIONS)
+        {
+            long pair = (stones << direction) & (stones << (2 * direction));
+            cells |= pair & (stones << (3 * direction));
+            cells |= pair & (stones >>> direction);
+            pair = (stones >>> direction) & (stones >>> (2 * direction));
+            cells |= pair & (stones << direction);
+            cells |= pair & (stones >>> (3 * direction));
+        }
+        return cells & (BOARD_MASK ^ mask);
+    }
+
+    /**
+     * Checks if the piece in a cell completes four in a row. Only the four lines running through that cell
+     * are walked, so this is cheaper than checking the whole board after every move.
+     *
+     * @param stones pieces belonging to a single player, including the piece in the cell
+     * @param col column of the cell, 0 is the leftmost column
+     * @param row row of the cell, 0 is the bottom row
+     * @return true if the piece is part of four in a row, false if it is not
+     */
+    public static boolean connectsFour(long stones, int col, int row)
+    {
+        long move = 1L << bitIndex(col, row);
+        for (int direction : DIRECTIONS)
+        {
+            int count = 1;
+            long cell = move;
+            while (((cell = cell << direction) & stones) != 0)
+            {
+                count++;
+            }
+            cell = move;
+            while (((cell = cell >>> direction) & stones) != 0)
+            {
+                count++;
+            }
+            if (count >= 4)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get every occupied cell on the board. Only covers the first 64 bits of a larger board.
+     *
+     * @return mask of every piece on the board
+     */
+    public long getMask()
+    {
+        return player1Stones | player2Stones;
+    }
+
+    /**
+     * Get the number of pieces on the board
+     *
+     * @return number of pieces on the board
+     */
+    public int getMoveCount()
+    {
+        return moveCount;
+    }
+
+    /**
+     * Checks if dropping a piece into a column gives a player enough in a row to win. The column must be playable.
+     *
+     * @param col column to drop the piece into, 0 is the leftmost column
+     * @param player PLAYER1 or PLAYER2
+     * @return true if the move wins the game, false if it does not
+     */
+    public boolean isWinningMove(int col, int player)
+    {
+        return connects(player, col, heights[col]);
+    }
+
+    /**
+     * Checks if a player's piece in a cell, real or not, would be part of a winning line. Walks the
+     * four lines through the cell one cell at a time, so it works on boards of any size; the standard board
+     * uses the bitwise check instead.
+     *
+     * @param player PLAYER1 or PLAYER2
+     * @param col column of the cell, 0 is the leftmost column
+     * @param row row of the cell, 0 is the bottom row
+     * @return true if the cell completes a line of winLength pieces for the player
+     */
+    public boolean connects(int player, int col, int row)
+    {
+        if (standard)
+        {
+            return connectsFour(getStones(player) | (1L << bitIndex(col, row)), col, row);
+        }
+        for (int[] step : STEPS)
+        {
+            int count = 1;
+            for (int c = col + step[0], r = row + step[1]; isPiece(player, c, r); c += step[0], r += step[1])
+            {
+                count++;
+            }
+            for (int c = col - step[0], r = row - step[1]; isPiece(player, c, r); c -= step[0], r -= step[1])
+            {
+                count++;
+            }
+            if (count >= winLength)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a player has a piece in a cell
+     *
+     * @param player PLAYER1 or PLAYER2
+     * @param col column of the cell, may be off the board
+     * @param row row of the cell, may be off the board
+     * @return true if the cell is on the board and holds one of the player's pieces
+     */
+    public boolean isPiece(int player, int col, int row)
+    {
+        if (col < 0 || col >= width || row < 0 || row >= height)
+        {
+            return false;
+        }
+        int bit = col * columnBits + row;
+        if (bit < Long.SIZE)
+        {
+            return (getStones(player) & (1L << bit)) != 0;
+        }
+        return ((player == PLAYER1 ? player1High : player2High) & (1L << (bit - Long.SIZE))) != 0;
+    }
+
+    /**
+     * Get the pieces of a player. Only covers the first 64 bits of a larger board.
+     *
+     * @param player PLAYER1 or PLAYER2
+     * @return mask of the player's pieces
+     */
+    public long getStones(int player)
+    {
+        return player == PLAYER1 ? player1Stones : player2Stones;
+    }
+
+    /**
+     * Checks if a piece can be dropped into a column
+     *
+     * @param col column to check, 0 is the leftmost column
+     * @return true if the column exists and is not full, false otherwise
+     */
+    public boolean canPlay(int col)
+    {
+        return col >= 0 && col < width && heights[col] < height;
+    }
+
+    /**
+     * Get the columns that still have room for a piece
+     *
+     * @return mask with bit i set if column i, starting at 0, is not full
+     */
+    public int legalMovesMask()
+    {
+        return legalColumns;
+    }
+
+    /**
+     * Get the number of pieces in a column
+     *
+     * @param col column of the board, 0 is the leftmost column
+     * @return number of pieces in the column, which is also the row the next piece lands in
+     */
+    public int getHeight(int col)
+    {
+        return heights[col];
+    }
+
+    /**
+     * Drop a piece for a player into a column. The piece lands on the lowest empty cell of the column.
+     * The column must be playable.
+     *
+     * @param col column to drop the piece into, 0 is the leftmost column
+     * @param player PLAYER1 or PLAYER2
+     * @return row the piece landed in, 0 is the bottom row
+     */
+    public int drop(int col, int player)
+    {
+        int row = heights[col]++;
+        int bit = col * columnBits + row;
+        if (bit < Long.SIZE)
+        {
+            long move = 1L << bit;
+            if (player == PLAYER1)
+            {
+                player1Stones |= move;
+            } else
+            {
+                player2Stones |= move;
+            }
+        } else if (player == PLAYER1)
+        {
+            player1High |= 1L << (bit - Long.SIZE);
+        } else
+        {
+            player2High |= 1L << (bit - Long.SIZE);
+        }
+        if (heights[col] == height)
+        {
+            legalColumns &= ~(1 << col);
+        }
+        moveCount++;
+        toggleHash(col, row, player);
+        return row;
+    }
+
+    /**
+     * Remove the top piece from a column. Undoes the last drop into that column.
+     * The column must not be empty.
+     *
+     * @param col column to remove the piece from, 0 is the leftmost column
+     * @return row the piece was removed from, 0 is the bottom row
+     */
+    public int undrop(int col)
+    {
+        int row = --heights[col];
+        int bit = col * columnBits + row;
+        if (bit < Long.SIZE)
+        {
+            long move = ~(1L << bit);
+            toggleHash(col, row, (player1Stones & ~move) != 0 ? PLAYER1 : PLAYER2);
+            player1Stones &= move;
+            player2Stones &= move;
+        } else
+        {
+            long move = ~(1L << (bit - Long.SIZE));
+            toggleHash(col, row, (player1High & ~move) != 0 ? PLAYER1 : PLAYER2);
+            player1High &= move;
+            player2High &= move;
+        }
+        legalColumns |= 1 << col;
+        moveCount--;
+        return row;
+    }
+
+    /**
+     * Adds or removes a piece from the position hash and from the hash of the mirrored position
+     *
+     * @param col column of the piece, 0 is the leftmost column
+     * @param row row of the piece, 0 is the bottom row
+     * @param player PLAYER1 or PLAYER2
+     */
+    private void toggleHash(int col, int row, int player)
+    {
+        int offset = player == PLAYER1 ? 0 : width * columnBits;
+        hash ^= ZOBRIST[offset + col * columnBits + row];
+        mirrorHash ^= ZOBRIST[offset + (width - 1 - col) * columnBits + row];
+    }
+
+    /**
+     * Get the Zobrist hash of the position. The hash is updated with every drop and undrop.
+     *
+     * @return 64-bit hash of the position
+     */
+    public long getHash()
+    {
+        return hash;
+    }
+
+    /**
+     * Get the Zobrist hash of the position reflected left to right
+     *
+     * @return 64-bit hash of the mirrored position
+     */
+    public long getMirrorHash()
+    {
+        return mirrorHash;
+    }
+
+    /**
+     * Get a key that is the same for a position and its left to right mirror image
+     *
+     * @return the smaller of the position hash and the mirrored hash
+     */
+    public long getCanonicalKey()
+    {
+        return Math.min(hash, mirrorHash);
+    }
+
+    /**
+     * Checks if a player has enough in a row to win
+     *
+     * @param player PLAYER1 or PLAYER2
+     * @return true if the player has a winning line, false if they don't
+     */
+    public boolean isWin(int player)
+    {
+        if (standard)
+        {
+            return hasFourInARow(getStones(player));
+        }
+        if (geometry.fitsInLong())
+        {
+            //shift the pieces onto themselves once for each extra piece in the line
+            long stones = getStones(player);
+            for (int direction : directions)
+            {
+                long m = stones;
+                for (int i = 1; i < winLength && m != 0; i++)
+                {
+                    m &= stones >>> (i * direction);
+                }
+                if (m != 0)
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (int[] line : geometry.getLines())
+        {
+            int count = 0;
+            while (count < winLength && isPiece(player, line[count] / columnBits, line[count] % columnBits))
+            {
+                count++;
+            }
+            if (count == winLength)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -16,10 +16,13 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Scanner;
 
@@ -33,6 +36,7 @@ public class Connect4Client extends Application implements Connect4Constants
     private char otherToken;
     private DataInputStream fromServer;
     private DataOutputStream toServer;
+    private final byte[] moveFrame = new byte[MOVE_FRAME_BYTES];
     private boolean continueToPlay;
     private boolean waiting;
     private int colSelection;
@@ -40,6 +44,7 @@ public class Connect4Client extends Application implements Connect4Constants
     private int player;
     private int status;
     private boolean pvp;
+    private int difficulty;
     private boolean textGame;
     private final char[][] textBoard;
     private int row;
@@ -89,8 +94,8 @@ public class Connect4Client extends Application implements Connect4Constants
         {
             String host = "localhost";
             Socket socket = new Socket(host, 8004);
-            fromServer = new DataInputStream(socket.getInputStream());
-            toServer = new DataOutputStream(socket.getOutputStream());
+            fromServer = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            toServer = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
         } catch (Exception e)
         {
             e.printStackTrace();
@@ -105,6 +110,7 @@ public class Connect4Client extends Application implements Connect4Constants
                     myToken = PLAYER1TOKEN;
                     textGame(); //Ask player1 which UI they want to use
                     toServer.writeBoolean(textGame); //Let the server know which UI it will be using for this session
+                    toServer.flush();
                     if (turn1)
                     {
                         myTurn = true; //Player1 always goes first
@@ -119,10 +125,29 @@ public class Connect4Client extends Application implements Connect4Constants
                         waitForPlayerAction();
                     }
                     toServer.writeBoolean(pvp); //Let the server know which game type this session will be: player vs player or player vs computer
+                    toServer.flush();
                     if (pvp)
                     {
                         otherToken = PLAYER2TOKEN;
                         fromServer.readInt(); //Get player number again?
+                    } else
+                    {
+                        if (textGame)
+                        {
+                            getTextDifficulty(); //Ask player1 how hard the computer should play via the console
+                        } else
+                        {
+                            getDifficultyGUI(); //Ask player1 how hard the computer should play via the GUI
+                            waitForPlayerAction();
+                        }
+                        toServer.writeInt(difficulty); //Ask the server for this difficulty
+                        toServer.flush();
+                        int granted = fromServer.readInt(); //The server may lower the difficulty
+                        if (granted != difficulty)
+                        {
+                            System.out.println("The server lowered the difficulty to " + Connect4Difficulty.fromLevel(granted));
+                        }
+                        difficulty = granted;
                     }
                 } else //if player2
                 {
@@ -201,7 +226,6 @@ public class Connect4Client extends Application implements Connect4Constants
     private void receiveInfoFromServer() throws IOException
     {
         receiveMove();
-        status = fromServer.readInt(); //Get the current game status from the server
 
         if(textGame)
             playerWinTextGame(status); //If the game is over show result via console
@@ -210,14 +234,17 @@ public class Connect4Client extends Application implements Connect4Constants
     }
 
     /**
-     * Get the last move from the server and place the piece in the correct spot on the game board
+     * Get the last move and the game status from the server in one frame and place the piece in the correct spot on the game board
      * @throws IOException
      */
     private void receiveMove() throws IOException
     {
-        row = fromServer.readInt(); //Get the row the piece is to be placed in from the server
-        int column = fromServer.readInt(); //Get the column the piece is to be placed in from the server
-        boolean myPiece = fromServer.readBoolean(); //Get the last move's piece from the server, true if my piece, false if other player's piece
+        fromServer.readFully(moveFrame);
+        ByteBuffer frame = ByteBuffer.wrap(moveFrame);
+        row = frame.getInt(); //Get the row the piece is to be placed in from the server
+        int column = frame.getInt(); //Get the column the piece is to be placed in from the server
+        boolean myPiece = frame.get() != 0; //Get the last move's piece from the server, true if my piece, false if other player's piece
+        status = frame.getInt(); //Get the current game status from the server
 
         if (!textGame)
         {
@@ -318,6 +345,24 @@ public class Connect4Client extends Application implements Connect4Constants
         }
     }
 
+    /**
+     * If the game is against the computer in a text-based game, ask the player how hard the computer should play. If the player enters
+     * a bad response, prompt them again
+     */
+    public void getTextDifficulty()
+    {
+        int last = Connect4Difficulty.values().length;
+        System.out.print("Enter a difficulty from 1 (easiest) to " + last + " (perfect play): ");
+        difficulty = scan.hasNextInt() ? scan.nextInt() : -1;
+
+        while (Connect4Difficulty.fromLevel(difficulty) == null)
+        {
+            scan.nextLine();
+            System.out.print("Sorry, I did not understand that. Enter a difficulty from 1 to " + last + ": ");
+            difficulty = scan.hasNextInt() ? scan.nextInt() : -1;
+        }
+    }
+
     /**
      * Update the text-game board from the previous move and get the next move from the appropriate player
      */
@@ -383,6 +428,7 @@ public class Connect4Client extends Application implements Connect4Constants
     private void sendTextMove(int col) throws IOException
     {
         toServer.writeInt(col); //Send the desired column selection to the server
+        toServer.flush();
     }
 
     /**
@@ -520,6 +566,7 @@ public class Connect4Client extends Application implements Connect4Constants
     private void sendMoveGUI() throws IOException, InterruptedException
     {
         toServer.writeInt(colSelection); //Send the desired column selection to the server via GUI
+        toServer.flush();
         validMove = fromServer.readBoolean(); //Get info from server if move is valid or not
 
         while(!validMove) //if the move is not valid, get another column selection from the user. Continue until user gives a valid column
@@ -527,6 +574,7 @@ public class Connect4Client extends Application implements Connect4Constants
             myTurn = true;
             waitForPlayerAction();
             toServer.writeInt(colSelection);
+            toServer.flush();
             validMove = fromServer.readBoolean();
         }
     }
@@ -780,6 +828,51 @@ public class Connect4Client extends Application implements Connect4Constants
         gameSelectionPopUp.hide();
     }
 
+    /**
+     * Sets the difficulty based off of the button clicked and closes the popup
+     *
+     * @param level                difficulty level selected
+     * @param difficultyPopUp      stage to be closed upon selection
+     */
+    public void difficultySelectionGUI(int level, Stage difficultyPopUp)
+    {
+        difficulty = level;
+        waiting = false;
+        difficultyPopUp.hide();
+    }
+
+    /**
+     * Get the difficulty of a gui game against the computer. Shows a button for each difficulty level
+     */
+    public void getDifficultyGUI()
+    {
+        Platform.runLater(() -> {
+            Stage stage = new Stage();
+            BorderPane pane = new BorderPane();
+            HBox buttons = new HBox();
+            Label label = new Label("How hard should the computer play?");
+            for (Connect4Difficulty level : Connect4Difficulty.values())
+            {
+                Button option = new Button(level.toString());
+                option.setOnAction(e -> difficultySelectionGUI(level.getLevel(), stage));
+                buttons.getChildren().add(option);
+            }
+            label.setAlignment(Pos.CENTER);
+            buttons.setAlignment(Pos.CENTER);
+
+            pane.setTop(label);
+            pane.setBottom(buttons);
+
+            Scene scene = new Scene(pane);
+            stage.setTitle("Select Difficulty");
+            stage.initModality(Modality.APPLICATION_MODAL);
+            stage.initStyle(StageStyle.UTILITY);
+            stage.setScene(scene);
+
+            stage.show();
+        });
+    }
+
     /**
      * Get the game type of a gui game. Lets the player select if they want to play against
      * another player or the computer
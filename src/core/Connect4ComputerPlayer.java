@@ -1,19 +1,330 @@
 package core;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 /**
  * Create a computer that will act as a player in a game of Connect4 by choosing a column number to place a piece into
  */
-public class Connect4ComputerPlayer
+public class Connect4ComputerPlayer implements Connect4Constants, Connect4Player
 {
+    public static final int DEFAULT_DEPTH = 8;
+    //deep enough to fill the largest board a Connect4Geometry allows
+    public static final int MAX_DEPTH = Connect4Geometry.MAX_BITS;
+    public static final long DEFAULT_TIME_BUDGET_MILLIS = 200;
+    public static final int WIN_SCORE = 1000000;
+    public static final long DEFAULT_TABLE_BYTES = 16L * 1024 * 1024;
+    public static final long PERFECT_PLAY_TABLE_BYTES = 8L * 1024 * 1024;
+    //after pondering, a move always gets at least this share of the time budget
+    public static final int MIN_REPLY_FRACTION = 4;
+
+    //table shared by every computer player that is not given its own
+    private static final Connect4TranspositionTable SHARED_TABLE = new Connect4TranspositionTable(DEFAULT_TABLE_BYTES);
+
+    private final Random rand;
+    private final int depth;
+    private final Connect4TranspositionTable table;
     private int colSelection;
+    private long timeBudgetMillis;
+    private long nodeBudget;
+    private int threads;
+    private boolean moveOrdering;
+    private ExecutorService helpers;
+    private ExecutorService ponderThread;
+    private boolean ownPonderThread;
+    private Future<?> pondering;
+    private volatile boolean ponderStop;
+    private long ponderNanos;
+    private long ponderMillis;
+    private long ponderNodes;
+    private Connect4OpeningBook openingBook;
+    private Connect4Solver solver;
+    private volatile boolean abort;
+    private long deadline;
+    private long nodes;
+    private long searchNanos;
+    private int completedDepth;
+    private int lastScore;
+    private long cutoffs;
+    private long firstMoveCutoffs;
+    private long[] nodesPerDepth;
 
     /**
      * Initialize the column number that the computer will drop a piece into
      */
     public Connect4ComputerPlayer()
     {
+        this(DEFAULT_DEPTH);
+    }
+
+    /**
+     * Initialize a computer that looks a given number of moves ahead
+     *
+     * @param depth number of moves to search ahead
+     */
+    public Connect4ComputerPlayer(int depth)
+    {
+        this(depth, SHARED_TABLE);
+    }
+
+    /**
+     * Initialize a computer that looks a given number of moves ahead and remembers
+     * positions it has searched in a transposition table
+     *
+     * @param depth number of moves to search ahead
+     * @param table table of searched positions, may be shared with other computer players
+     */
+    public Connect4ComputerPlayer(int depth, Connect4TranspositionTable table)
+    {
+        rand = new Random();
+        this.depth = depth;
+        this.table = table;
         colSelection = 0;
+        timeBudgetMillis = 0;
+        nodeBudget = 0;
+        threads = 1;
+        moveOrdering = true;
+        nodesPerDepth = new long[MAX_DEPTH + 1];
+    }
+
+    /**
+     * Limit how long the computer may think about each move. The search goes one move deeper at a time
+     * and plays the best move from the deepest search that finished in time.
+     *
+     * @param millis milliseconds allowed per move, 0 for no limit
+     */
+    public void setTimeBudget(long millis)
+    {
+        timeBudgetMillis = millis;
+    }
+
+    /**
+     * Limit how many positions each search thread may visit for each move
+     *
+     * @param nodes positions allowed per move, 0 for no limit
+     */
+    public void setNodeBudget(long nodes)
+    {
+        nodeBudget = nodes;
+    }
+
+    /**
+     * Set the number of threads that search each move. Extra threads search the same position at
+     * the same time and share what they find through the transposition table (Lazy SMP). The move
+     * is always taken from the calling thread's search.
+     *
+     * @param threads number of search threads, at least 1
+     */
+    public void setThreads(int threads)
+    {
+        if (threads < 1)
+        {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        shutdown();
+        this.threads = threads;
+        if (threads > 1)
+        {
+            helpers = Executors.newFixedThreadPool(threads - 1, runnable -> {
+                Thread thread = new Thread(runnable, "Connect4Search");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Turn move ordering on or off. With ordering on, the search tries the transposition table move first,
+     * then the killer moves for the ply, then the rest by history score with center columns breaking ties.
+     * With ordering off, only the transposition table move is tried first and the rest go from left to right,
+     * which is useful to measure how much ordering saves.
+     *
+     * @param ordering true to order moves, false to try them from left to right
+     */
+    public void setMoveOrdering(boolean ordering)
+    {
+        moveOrdering = ordering;
+    }
+
+    /**
+     * Give the computer an opening book to play from. Positions found in the book are answered
+     * from it without searching. The book only covers the standard board.
+     *
+     * @param book opening book, or null to always search
+     */
+    public void setOpeningBook(Connect4OpeningBook book)
+    {
+        openingBook = book;
+    }
+
+    /**
+     * Switch the computer to perfect play. Instead of searching to a depth it solves every move exactly
+     * with a Connect4Solver, ignoring the time and node budgets. Solving the first few moves takes a long
+     * time, so perfect play should be paired with a solved opening book; books built by searching to a depth are
+     * not used in perfect play. The solver only handles the standard board, so games on other boards keep
+     * searching to a depth. The solver gets a table of PERFECT_PLAY_TABLE_BYTES.
+     *
+     * @param perfect true to solve every move, false to go back to depth-limited search
+     */
+    public void setPerfectPlay(boolean perfect)
+    {
+        solver = perfect ? new Connect4Solver(PERFECT_PLAY_TABLE_BYTES) : null;
+    }
+
+    /**
+     * Switch the computer to perfect play with a given solver, for example one with a larger table
+     *
+     * @param solver solver used by this computer only, since a solver is not thread-safe
+     */
+    public void setPerfectPlay(Connect4Solver solver)
+    {
+        this.solver = solver;
+    }
+
+    /**
+     * Checks if the computer plays perfectly
+     *
+     * @return true if every move is solved exactly, false if the computer searches to a depth
+     */
+    public boolean isPerfectPlay()
+    {
+        return solver != null;
+    }
+
+    /**
+     * Stop the helper threads used for parallel search and pondering. The computer goes back to searching
+     * on one thread. An executor given to setPonderExecutor is shared, so it is kept and left running.
+     */
+    public void shutdown()
+    {
+        stopPondering();
+        if (helpers != null)
+        {
+            helpers.shutdownNow();
+            helpers = null;
+        }
+        if (ponderThread != null && ownPonderThread)
+        {
+            ponderThread.shutdownNow();
+            ponderThread = null;
+            ownPonderThread = false;
+        }
+        threads = 1;
+    }
+
+    /**
+     * Ponder on threads shared with other computer players instead of a thread of this player's own.
+     * If the executor rejects a ponder search the computer does not ponder that move.
+     *
+     * @param executor executor to run ponder searches on, or null to use a thread of this player's own
+     */
+    public void setPonderExecutor(ExecutorService executor)
+    {
+        stopPondering();
+        if (ponderThread != null && ownPonderThread)
+        {
+            ponderThread.shutdownNow();
+        }
+        ponderThread = executor;
+        ownPonderThread = false;
+    }
+
+    /**
+     * Start thinking on the opponent's time. A background thread searches the position the opponent has to
+     * move from, which fills the transposition table with the computer's best answers to each of their likely
+     * replies. The next call to chooseCol stops pondering and counts the time spent searching against its
+     * time budget, down to MIN_REPLY_FRACTION of the budget, so the computer answers sooner without
+     * searching for longer in total. Does nothing in perfect play, since the solver is not shared.
+     *
+     * @param board board the opponent is about to move on, copied before this returns
+     * @param player the opponent, who is about to move
+     */
+    public void ponder(Connect4BitBoard board, int player)
+    {
+        stopPondering();
+        if ((solver != null && board.getGeometry().isStandard()) || board.legalMovesMask() == 0)
+        {
+            return;
+        }
+        if (ponderThread == null)
+        {
+            ponderThread = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Connect4Ponder");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ownPonderThread = true;
+        }
+
+        Searcher searcher = new Searcher(board, 0, true);
+        int maxDepth = Math.min(depth, board.getGeometry().getCells() - board.getMoveCount());
+        ponderStop = false;
+        ponderNanos = 0;
+        try
+        {
+            pondering = ponderThread.submit(() -> {
+                //timed on the ponder thread, so waiting in the executor's queue or idling after the search
+                //finished is not counted
+                long start = System.nanoTime();
+                searcher.iterate(player, maxDepth);
+                ponderNodes = searcher.nodes;
+                ponderNanos = System.nanoTime() - start;
+            });
+        } catch (RejectedExecutionException e)
+        {
+            pondering = null; //no thread free to ponder on, search normally next move
+        }
+    }
+
+    /**
+     * Stop pondering and wait for the background search to finish. Does nothing if the computer is not pondering.
+     */
+    public void stopPondering()
+    {
+        if (pondering == null)
+        {
+            return;
+        }
+        ponderStop = true;
+        waitFor(pondering);
+        pondering = null;
+        ponderMillis = ponderNanos / 1000000L;
+    }
+
+    /**
+     * Checks if the computer is thinking on the opponent's time
+     *
+     * @return true if a background search is running, false if not
+     */
+    public boolean isPondering()
+    {
+        return pondering != null && !pondering.isDone();
+    }
+
+    /**
+     * Get the time the last ponder search spent searching, which is what the next move's time budget is
+     * charged for. A search that finished before the opponent moved is not charged for the wait after it.
+     *
+     * @return milliseconds spent searching while pondering
+     */
+    public long getPonderMillis()
+    {
+        return ponderNanos / 1000000L;
+    }
+
+    /**
+     * Get the number of positions visited by the last ponder search
+     *
+     * @return number of positions visited while pondering
+     */
+    public long getPonderNodes()
+    {
+        return ponderNodes;
     }
 
     /**
@@ -22,8 +333,606 @@ public class Connect4ComputerPlayer
      */
     public int chooseRandomCol()
     {
-        Random rand = new Random();
-        colSelection = rand.nextInt(7)+1;
+        colSelection = rand.nextInt(COLUMNS)+1;
         return colSelection;
     }
+
+    /**
+     * Choose the best column for a player. Positions in the opening book are answered from the book, unless
+     * the computer plays perfectly and the book is not solved, and in perfect play every other position is solved exactly. Otherwise the computer searches ahead with negamax and alpha-beta pruning. The search is repeated
+     * one move deeper at a time until the depth limit is reached or the time or node budget runs out,
+     * and the best column from the deepest finished search is returned.
+     * Each search thread copies the board once so it can drop and remove pieces without touching the game.
+     *
+     * @param board board to choose a move for
+     * @param player PLAYER1 or PLAYER2
+     * @return column selection, starting at 1, or 0 if the board is full
+     */
+    @Override
+    public int chooseCol(Connect4BitBoard board, int player)
+    {
+        stopPondering();
+        long budgetMillis = timeBudgetMillis;
+        if (ponderMillis > 0 && budgetMillis > 0)
+        {
+            budgetMillis = Math.max(budgetMillis - ponderMillis, budgetMillis / MIN_REPLY_FRACTION);
+        }
+        ponderMillis = 0;
+
+        boolean standard = board.getGeometry().isStandard();
+        if (openingBook != null && standard && (solver == null || openingBook.isSolved()))
+        {
+            int col = openingBook.bestMove(board);
+            if (col != Connect4OpeningBook.NOT_FOUND && board.canPlay(col))
+            {
+                clearStatistics();
+                searchNanos = 0;
+                completedDepth = 0;
+                lastScore = Connect4OpeningBook.score(openingBook.lookup(board.getCanonicalKey()));
+                colSelection = col + 1;
+                return colSelection;
+            }
+        }
+
+        if (solver != null && standard)
+        {
+            long start = System.nanoTime();
+            int col = solver.bestMove(board, player);
+            searchNanos = System.nanoTime() - start;
+            clearStatistics();
+            nodes = solver.getNodes();
+            completedDepth = board.getGeometry().getCells() - board.getMoveCount();
+            lastScore = solver.getBestScore();
+            colSelection = col + 1;
+            return colSelection;
+        }
+
+        int maxDepth = Math.min(depth, board.getGeometry().getCells() - board.getMoveCount());
+        long start = System.nanoTime();
+        abort = false;
+        deadline = budgetMillis > 0 ? start + budgetMillis * 1000000L : Long.MAX_VALUE;
+
+        List<Searcher> helperSearchers = new ArrayList<>();
+        List<Future<?>> running = new ArrayList<>();
+        for (int i = 1; i < threads; i++)
+        {
+            Searcher helper = new Searcher(board, i, false);
+            helperSearchers.add(helper);
+            running.add(helpers.submit(() -> helper.iterate(player, maxDepth)));
+        }
+
+        Searcher main = new Searcher(board, 0, false);
+        main.iterate(player, maxDepth);
+        abort = true;
+
+        clearStatistics();
+        main.addStatistics();
+        for (int i = 0; i < running.size(); i++)
+        {
+            waitFor(running.get(i));
+            helperSearchers.get(i).addStatistics();
+        }
+        searchNanos = System.nanoTime() - start;
+        completedDepth = main.completedDepth;
+        lastScore = main.lastScore;
+
+        int bestCol = main.bestCol;
+        if (bestCol < 0 && board.legalMovesMask() != 0)
+        {
+            bestCol = Integer.numberOfTrailingZeros(board.legalMovesMask()); //out of budget before any move was scored
+        }
+
+        colSelection = bestCol + 1;
+        return colSelection;
+    }
+
+    /**
+     * Waits for a helper thread to finish its search
+     *
+     * @param helper search running on a helper thread
+     */
+    private static void waitFor(Future<?> helper)
+    {
+        try
+        {
+            helper.get();
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Get the depth of the deepest search that finished for the last move
+     *
+     * @return number of moves searched ahead
+     */
+    public int getCompletedDepth()
+    {
+        return completedDepth;
+    }
+
+    /**
+     * Get the score of the last move chosen, from the computer's point of view. In perfect play this
+     * is the exact score from Connect4Solver.
+     *
+     * @return score of the last move chosen
+     */
+    public int getLastScore()
+    {
+        return lastScore;
+    }
+
+    /**
+     * Get the number of positions visited by the last search, counting every search thread
+     *
+     * @return number of positions visited
+     */
+    public long getNodes()
+    {
+        return nodes;
+    }
+
+    /**
+     * Get the number of beta cutoffs in the last search, counting every search thread
+     *
+     * @return number of cutoffs
+     */
+    public long getCutoffs()
+    {
+        return cutoffs;
+    }
+
+    /**
+     * Get the number of beta cutoffs in the last search that came from the first move tried,
+     * counting every search thread
+     *
+     * @return number of cutoffs on the first move
+     */
+    public long getFirstMoveCutoffs()
+    {
+        return firstMoveCutoffs;
+    }
+
+    /**
+     * Get the share of beta cutoffs that came from the first move tried. The closer this is to 1
+     * the better the moves were ordered.
+     *
+     * @return cutoffs on the first move divided by all cutoffs, 0 if there were none
+     */
+    public double getFirstMoveCutoffRate()
+    {
+        return cutoffs > 0 ? (double) firstMoveCutoffs / cutoffs : 0;
+    }
+
+    /**
+     * Get the number of positions visited by each iteration of the last search, counting every
+     * search thread
+     *
+     * @return positions visited, indexed by the depth of the iteration
+     */
+    public long[] getNodesPerDepth()
+    {
+        return nodesPerDepth.clone();
+    }
+
+    /**
+     * Resets the search statistics before they are collected for a new move
+     */
+    private void clearStatistics()
+    {
+        nodes = 0;
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+        nodesPerDepth = new long[MAX_DEPTH + 1];
+    }
+
+    /**
+     * Get how fast the last search visited positions, counting every search thread
+     *
+     * @return positions visited per second
+     */
+    public long getNodesPerSecond()
+    {
+        return searchNanos > 0 ? nodes * 1000000000L / searchNanos : 0;
+    }
+
+    /**
+     * Get the other player
+     *
+     * @param player PLAYER1 or PLAYER2
+     * @return the player that is not the given player
+     */
+    private static int opponent(int player)
+    {
+        return player == PLAYER1 ? PLAYER2 : PLAYER1;
+    }
+
+    /**
+     * One thread's search of a position. Every thread searches its own copy of the board and keeps its own
+     * counters, killer moves and history table, and all of them read and write the computer player's
+     * transposition table.
+     */
+    private class Searcher
+    {
+        private static final int HISTORY_LIMIT = 1 << 24;
+
+        private final Connect4BitBoard board;
+        private final Connect4Evaluator evaluator;
+        private final Connect4Geometry geometry;
+        private final int width;
+        private final int cells;
+        //columns from the center out, the order moves are tried in when nothing better is known
+        private final int[] centerOrder;
+        private final int id;
+        private final boolean ponder;
+        private final int[][] killers;
+        private final int[][] history;
+        private final int[][] moves;
+        private final int[][] moveScores;
+        private final long[] depthNodes;
+        private long nodes;
+        private long cutoffs;
+        private long firstMoveCutoffs;
+        private boolean stopped;
+        private int bestCol;
+        private int rootScore;
+        private int lastScore;
+        private int completedDepth;
+
+        /**
+         * Create a search of a copy of a board
+         *
+         * @param board board to search
+         * @param id 0 for the calling thread, 1 and up for helper threads
+         * @param ponder true if the search runs on the opponent's time and only stops when pondering stops
+         */
+        Searcher(Connect4BitBoard board, int id, boolean ponder)
+        {
+            this.board = new Connect4BitBoard(board);
+            evaluator = new Connect4Evaluator(board);
+            geometry = board.getGeometry();
+            width = geometry.getWidth();
+            cells = geometry.getCells();
+            centerOrder = geometry.getCenterOrder();
+            this.id = id;
+            this.ponder = ponder;
+            killers = new int[cells + 1][2];
+            for (int[] ply : killers)
+            {
+                ply[0] = Connect4TranspositionTable.NO_MOVE;
+                ply[1] = Connect4TranspositionTable.NO_MOVE;
+            }
+            history = new int[2][geometry.getBits()];
+            moves = new int[cells + 1][width];
+            moveScores = new int[cells + 1][width];
+            depthNodes = new long[MAX_DEPTH + 1];
+            bestCol = -1;
+        }
+
+        /**
+         * Add this thread's counters to the computer player's statistics
+         */
+        void addStatistics()
+        {
+            Connect4ComputerPlayer.this.nodes += nodes;
+            Connect4ComputerPlayer.this.cutoffs += cutoffs;
+            Connect4ComputerPlayer.this.firstMoveCutoffs += firstMoveCutoffs;
+            for (int i = 0; i < depthNodes.length; i++)
+            {
+                nodesPerDepth[i] += depthNodes[i];
+            }
+        }
+
+        /**
+         * Searches one move deeper at a time until the depth limit, the budget, or a decided game is reached.
+         * Helper threads with an odd id start one move deeper so they spread out over different depths.
+         *
+         * @param player player about to move
+         * @param maxDepth deepest search to run
+         */
+        void iterate(int player, int maxDepth)
+        {
+            for (int iteration = 1 + (id & 1); iteration <= maxDepth; iteration++)
+            {
+                long before = nodes;
+                int col = searchRoot(player, iteration, bestCol);
+                depthNodes[iteration] += nodes - before;
+                if (stopped)
+                {
+                    if (bestCol < 0)
+                    {
+                        bestCol = col;
+                    }
+                    break;
+                }
+                bestCol = col;
+                lastScore = rootScore;
+                completedDepth = iteration;
+                if (Math.abs(lastScore) > WIN_SCORE - cells - 1)
+                {
+                    break; //the game is decided, searching deeper will not change the move
+                }
+            }
+        }
+
+        /**
+         * Searches every move from the root to a fixed depth, starting with the best move from the last
+         * iteration and then from the center out. Helper threads start from a different column than the
+         * calling thread so they fill the transposition table with different lines.
+         *
+         * @param player player about to move
+         * @param depth number of moves to search
+         * @param firstCol column to search first, or -1
+         * @return best column found, starting at 0, or -1 if no move could be made
+         */
+        private int searchRoot(int player, int depth, int firstCol)
+        {
+            int bestCol = -1;
+            int alpha = -WIN_SCORE - 1;
+            int beta = WIN_SCORE + 1;
+
+            for (int i = -1; i < width; i++)
+            {
+                int col = i < 0 ? firstCol
+                        : moveOrdering ? centerOrder[(i + id) % width] : (i + id) % width;
+                if (col < 0 || (i >= 0 && col == firstCol) || !board.canPlay(col))
+                {
+                    continue;
+                }
+                if (board.isWinningMove(col, player))
+                {
+                    rootScore = WIN_SCORE - board.getMoveCount() - 1;
+                    return col;
+                }
+
+                play(col, player);
+                int score = -negamax(opponent(player), depth - 1, -beta, -alpha);
+                undo(col, player);
+
+                if (stopped)
+                {
+                    break;
+                }
+                if (score > alpha)
+                {
+                    alpha = score;
+                    bestCol = col;
+                }
+            }
+
+            rootScore = alpha;
+            return bestCol;
+        }
+
+        /**
+         * Drops a piece on the search board and adds it to the evaluator's line counts
+         *
+         * @param col column to drop into, starting at 0
+         * @param player player dropping the piece
+         */
+        private void play(int col, int player)
+        {
+            evaluator.addPiece(geometry.bitIndex(col, board.drop(col, player)), player);
+        }
+
+        /**
+         * Takes back the last piece dropped into a column and removes it from the evaluator's line counts
+         *
+         * @param col column to take the piece from, starting at 0
+         * @param player player the piece belongs to
+         */
+        private void undo(int col, int player)
+        {
+            board.undrop(col);
+            evaluator.removePiece(geometry.bitIndex(col, board.getHeight(col)), player);
+        }
+
+        /**
+         * Checks if the search has to stop because the budget ran out, the calling thread finished or pondering
+         * was stopped
+         *
+         * @return true if the search has to stop, false if it can keep going
+         */
+        private boolean outOfBudget()
+        {
+            if (ponder)
+            {
+                return ponderStop;
+            }
+            return abort || (nodeBudget > 0 && nodes >= nodeBudget)
+                    || ((nodes & 1023) == 0 && System.nanoTime() >= deadline);
+        }
+
+        /**
+         * Sorts the legal moves of a position into the order they should be searched. The transposition
+         * table move comes first, then the two killer moves for the ply, then the rest by history score
+         * with columns nearer the center first on ties.
+         *
+         * @param player player about to move
+         * @param legal legal columns, bit i set for column i
+         * @param ttMove best move stored in the transposition table, or NO_MOVE
+         * @param ply number of pieces on the board
+         * @return number of moves written to moves[ply]
+         */
+        private int orderMoves(int player, int legal, int ttMove, int ply)
+        {
+            int[] ordered = moves[ply];
+            int[] scores = moveScores[ply];
+            int count = 0;
+            for (int i = 0; i < width; i++)
+            {
+                int col = moveOrdering ? centerOrder[i] : i;
+                if ((legal & (1 << col)) == 0)
+                {
+                    continue;
+                }
+                int score;
+                if (col == ttMove)
+                {
+                    score = Integer.MAX_VALUE;
+                } else if (!moveOrdering)
+                {
+                    score = 0;
+                } else if (col == killers[ply][0])
+                {
+                    score = HISTORY_LIMIT * 4;
+                } else if (col == killers[ply][1])
+                {
+                    score = HISTORY_LIMIT * 2;
+                } else
+                {
+                    score = history[player - 1][geometry.bitIndex(col, board.getHeight(col))];
+                }
+
+                //insertion sort, stable so ties keep the center-first order
+                int pos = count++;
+                while (pos > 0 && scores[pos - 1] < score)
+                {
+                    ordered[pos] = ordered[pos - 1];
+                    scores[pos] = scores[pos - 1];
+                    pos--;
+                }
+                ordered[pos] = col;
+                scores[pos] = score;
+            }
+            return count;
+        }
+
+        /**
+         * Remembers a move that caused a beta cutoff as a killer move for its ply and raises its history
+         * score. Cutoffs deeper in the tree count for less. History scores are halved when they get large
+         * so recent cutoffs keep mattering.
+         *
+         * @param player player that made the move
+         * @param col column of the move
+         * @param depth number of moves left to search below the position
+         * @param ply number of pieces on the board before the move
+         * @param firstMove true if the move was the first one searched
+         */
+        private void recordCutoff(int player, int col, int depth, int ply, boolean firstMove)
+        {
+            cutoffs++;
+            if (firstMove)
+            {
+                firstMoveCutoffs++;
+            }
+            if (killers[ply][0] != col)
+            {
+                killers[ply][1] = killers[ply][0];
+                killers[ply][0] = col;
+            }
+
+            int[] scores = history[player - 1];
+            int cell = geometry.bitIndex(col, board.getHeight(col));
+            scores[cell] += depth * depth;
+            if (scores[cell] >= HISTORY_LIMIT)
+            {
+                for (int i = 0; i < scores.length; i++)
+                {
+                    scores[i] /= 2;
+                }
+            }
+        }
+
+        /**
+         * Scores a position for the player about to move. A win scores WIN_SCORE minus the number of pieces on
+         * the board once it is made, so faster wins and slower losses are preferred and the score of a position
+         * does not depend on where the search started. Results are stored in the transposition table and moves
+         * are searched in the order given by orderMoves.
+         *
+         * @param player player about to move
+         * @param depth number of moves left to search
+         * @param alpha lowest score the player is already assured of
+         * @param beta highest score the opponent will allow
+         * @return score of the position for the player
+         */
+        private int negamax(int player, int depth, int alpha, int beta)
+        {
+            nodes++;
+            if (stopped || outOfBudget())
+            {
+                stopped = true;
+                return 0;
+            }
+            int legal = board.legalMovesMask();
+            if (legal == 0)
+            {
+                return 0;
+            }
+
+            for (int col = 0; col < width; col++)
+            {
+                if ((legal & (1 << col)) != 0 && board.isWinningMove(col, player))
+                {
+                    return WIN_SCORE - board.getMoveCount() - 1;
+                }
+            }
+
+            if (depth == 0)
+            {
+                return evaluator.evaluate(board, player);
+            }
+
+            long key = board.getHash();
+            long entry = table.probe(key);
+            int ttMove = Connect4TranspositionTable.NO_MOVE;
+            if (entry != Connect4TranspositionTable.MISS)
+            {
+                ttMove = Connect4TranspositionTable.bestMove(entry);
+                if (Connect4TranspositionTable.depth(entry) >= depth)
+                {
+                    int score = Connect4TranspositionTable.score(entry);
+                    int bound = Connect4TranspositionTable.bound(entry);
+                    if (bound == Connect4TranspositionTable.EXACT
+                            || (bound == Connect4TranspositionTable.LOWER && score >= beta)
+                            || (bound == Connect4TranspositionTable.UPPER && score <= alpha))
+                    {
+                        return score;
+                    }
+                }
+            }
+
+            int originalAlpha = alpha;
+            int best = -WIN_SCORE - 1;
+            int bestCol = Connect4TranspositionTable.NO_MOVE;
+            int ply = board.getMoveCount();
+            int count = orderMoves(player, legal, ttMove, ply);
+            int[] ordered = moves[ply];
+            for (int i = 0; i < count; i++)
+            {
+                int col = ordered[i];
+                play(col, player);
+                int score = -negamax(opponent(player), depth - 1, -beta, -alpha);
+                undo(col, player);
+
+                if (stopped)
+                {
+                    return 0;
+                }
+                if (score > best)
+                {
+                    best = score;
+                    bestCol = col;
+                }
+                if (score > alpha)
+                {
+                    alpha = score;
+                }
+                if (alpha >= beta)
+                {
+                    recordCutoff(player, col, depth, ply, i == 0);
+                    break;
+                }
+            }
+
+            int bound = best <= originalAlpha ? Connect4TranspositionTable.UPPER
+                    : best >= beta ? Connect4TranspositionTable.LOWER : Connect4TranspositionTable.EXACT;
+            table.store(key, best, depth, bound, bestCol);
+            return best;
+        }
+    }
 }
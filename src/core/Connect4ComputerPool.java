@@ -0,0 +1,315 @@
+package core;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed set of worker threads that compute the computer's moves for every player vs computer session on the
+ * server, so the CPU spent on searching stays bounded however many games are running.
+ *
+ * Each session queues its requests separately and sessions take turns: a worker runs one request from the session
+ * at the front of the line, then sends the session to the back if it has more waiting. A session's requests run
+ * one at a time and in order, so they can share a computer player that is not thread-safe.
+ *
+ * Pondering gets its own smaller set of threads. A ponder search runs until the opponent moves, so it never
+ * waits in line; when every ponder thread is busy the session simply does not ponder.
+ *
+ * @author Chris Burdett
+ * @version 1.0
+ */
+public class Connect4ComputerPool
+{
+    private final BlockingQueue<Session> ready;
+    private final Thread[] workers;
+    private final ThreadPoolExecutor ponderThreads;
+    private final AtomicInteger queueDepth;
+    private final AtomicInteger active;
+    private final AtomicLong completed;
+    private final AtomicLong totalWaitNanos;
+    private final AtomicLong maxWaitNanos;
+    private volatile boolean shutdown;
+
+    /**
+     * Create a pool and start its workers
+     *
+     * @param workers number of threads computing moves, at least 1
+     * @param ponderers number of threads that may ponder at the same time, 0 to never ponder
+     */
+    public Connect4ComputerPool(int workers, int ponderers)
+    {
+        if (workers < 1 || ponderers < 0)
+        {
+            throw new IllegalArgumentException("need at least 1 worker and no fewer than 0 ponder threads");
+        }
+        ready = new LinkedBlockingQueue<>();
+        queueDepth = new AtomicInteger();
+        active = new AtomicInteger();
+        completed = new AtomicLong();
+        totalWaitNanos = new AtomicLong();
+        maxWaitNanos = new AtomicLong();
+
+        this.workers = new Thread[workers];
+        for (int i = 0; i < workers; i++)
+        {
+            this.workers[i] = new Thread(this::work, "Connect4Computer-" + i);
+            this.workers[i].setDaemon(true);
+            this.workers[i].start();
+        }
+
+        ponderThreads = new ThreadPoolExecutor(0, Math.max(1, ponderers), 30, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "Connect4Ponder");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        if (ponderers == 0)
+        {
+            ponderThreads.shutdown(); //every ponder request is rejected
+        }
+    }
+
+    /**
+     * Start a queue of requests for one game
+     *
+     * @return new session
+     */
+    public Session openSession()
+    {
+        return new Session();
+    }
+
+    /**
+     * Get the executor computer players should ponder on. It never queues: a ponder request is rejected
+     * when every ponder thread is busy.
+     *
+     * @return executor for ponder searches
+     */
+    public ExecutorService getPonderExecutor()
+    {
+        return ponderThreads;
+    }
+
+    /**
+     * Takes sessions off the front of the line and runs one request from each until the pool shuts down
+     */
+    private void work()
+    {
+        while (!shutdown)
+        {
+            Session session;
+            try
+            {
+                session = ready.take();
+            } catch (InterruptedException e)
+            {
+                return;
+            }
+
+            Request<?> request;
+            synchronized (session)
+            {
+                request = session.pending.poll();
+            }
+            if (request != null)
+            {
+                queueDepth.decrementAndGet();
+                long wait = System.nanoTime() - request.queuedAt;
+                totalWaitNanos.addAndGet(wait);
+                maxWaitNanos.accumulateAndGet(wait, Math::max);
+                request.run();
+            }
+
+            synchronized (session)
+            {
+                if (session.pending.isEmpty())
+                {
+                    session.scheduled = false;
+                } else
+                {
+                    ready.add(session); //back of the line so other sessions get a turn
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of requests waiting for a worker
+     *
+     * @return requests queued across every session
+     */
+    public int getQueueDepth()
+    {
+        return queueDepth.get();
+    }
+
+    /**
+     * Get the number of workers computing a move right now
+     *
+     * @return busy workers
+     */
+    public int getActiveWorkers()
+    {
+        return active.get();
+    }
+
+    /**
+     * Get the number of threads computing moves
+     *
+     * @return number of workers
+     */
+    public int getWorkers()
+    {
+        return workers.length;
+    }
+
+    /**
+     * Get the number of requests that have been run
+     *
+     * @return requests finished since the pool started
+     */
+    public long getCompleted()
+    {
+        return completed.get();
+    }
+
+    /**
+     * Get how long requests waited in line on average before a worker started them
+     *
+     * @return average wait in milliseconds
+     */
+    public double getAverageWaitMillis()
+    {
+        long count = completed.get() + active.get();
+        return count > 0 ? totalWaitNanos.get() / 1e6 / count : 0;
+    }
+
+    /**
+     * Get the longest any request waited in line before a worker started it
+     *
+     * @return longest wait in milliseconds
+     */
+    public double getMaxWaitMillis()
+    {
+        return maxWaitNanos.get() / 1e6;
+    }
+
+    /**
+     * Stop the workers and ponder threads. Requests still waiting are never run.
+     */
+    public void shutdown()
+    {
+        shutdown = true;
+        for (Thread worker : workers)
+        {
+            worker.interrupt();
+        }
+        ponderThreads.shutdownNow();
+    }
+
+    /**
+     * Queue of requests from one game. Requests run one at a time in the order they were submitted.
+     */
+    public class Session
+    {
+        private final ArrayDeque<Request<?>> pending;
+        private boolean scheduled;
+
+        /**
+         * Create an empty queue
+         */
+        private Session()
+        {
+            pending = new ArrayDeque<>();
+            scheduled = false;
+        }
+
+        /**
+         * Queue a request for the session
+         *
+         * @param task work to run on a pool worker
+         * @param <T> type of the result
+         * @return result of the task once a worker has run it
+         */
+        public <T> Future<T> submit(Callable<T> task)
+        {
+            if (shutdown)
+            {
+                throw new IllegalStateException("pool is shut down");
+            }
+            //count the request as finished before its result is handed back
+            Request<T> request = new Request<>(() -> {
+                active.incrementAndGet();
+                try
+                {
+                    return task.call();
+                } finally
+                {
+                    active.decrementAndGet();
+                    completed.incrementAndGet();
+                }
+            });
+            queueDepth.incrementAndGet();
+            synchronized (this)
+            {
+                pending.add(request);
+                if (!scheduled)
+                {
+                    scheduled = true;
+                    ready.add(this);
+                }
+            }
+            return request;
+        }
+
+        /**
+         * Ask a worker to choose the computer's column and wait for the answer
+         *
+         * @param computer computer player for this session
+         * @param game game to choose a move for
+         * @return column selection, starting at 1
+         * @throws InterruptedException if the session thread is interrupted while waiting
+         */
+        public int chooseCol(Connect4Player computer, Connect4 game) throws InterruptedException
+        {
+            try
+            {
+                return submit(() -> computer.chooseCol(game)).get();
+            } catch (ExecutionException e)
+            {
+                throw new IllegalStateException("computer failed to choose a move", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * A task waiting in a session's queue, remembering when it was queued
+     *
+     * @param <T> type of the result
+     */
+    private static class Request<T> extends FutureTask<T>
+    {
+        private final long queuedAt;
+
+        /**
+         * Wrap a task
+         *
+         * @param task work to run
+         */
+        Request(Callable<T> task)
+        {
+            super(task);
+            queuedAt = System.nanoTime();
+        }
+    }
+}
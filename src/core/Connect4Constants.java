@@ -10,6 +10,8 @@ public interface Connect4Constants
     public static int PLAYER2WIN = 2; // Indicate player 2 won
     public static int TIEGAME = 3; // Indicate a draw
     public static int CONTINUE = 4; // Indicate to continue
+    public static int INVALIDMOVE = 0; // Indicate the move could not be made
     public static int COLUMNS = 7;
     public static int ROWS = 6;
+    public static int MOVE_FRAME_BYTES = 13; // A move and the status sent together: row, column, my piece, status
 }
@@ -0,0 +1,147 @@
+package core;
+
+/**
+ * Difficulty levels a player can ask for when playing against the computer. Each level is a search budget for
+ * Connect4ComputerPlayer, from a shallow search that costs almost nothing up to perfect play, so casual games
+ * stay cheap and the heavy searching is only done for players who ask for it.
+ *
+ * The level number is what the client and server send each other when a player vs computer session starts.
+ *
+ * @author Chris Burdett
+ * @version 1.0
+ */
+public enum Connect4Difficulty
+{
+    EASY(1, 2, 200, 0, false, false),
+    MEDIUM(2, 4, 5000, 0, false, false),
+    HARD(3, 10, 0, 100, false, true),
+    EXPERT(4, Connect4ComputerPlayer.MAX_DEPTH, 0, Connect4ComputerPlayer.DEFAULT_TIME_BUDGET_MILLIS, false, true),
+    PERFECT(5, Connect4ComputerPlayer.MAX_DEPTH, 0, 0, true, true);
+
+    public static final Connect4Difficulty DEFAULT = HARD;
+
+    private final int level;
+    private final int depth;
+    private final long nodeBudget;
+    private final long timeBudgetMillis;
+    private final boolean perfectPlay;
+    private final boolean ponders;
+
+    /**
+     * Describe a level
+     *
+     * @param level number sent over the network for the level
+     * @param depth number of moves the computer searches ahead
+     * @param nodeBudget positions the computer may visit per move, 0 for no limit
+     * @param timeBudgetMillis milliseconds the computer may think per move, 0 for no limit
+     * @param perfectPlay true if every move is solved exactly
+     * @param ponders true if the computer thinks on the player's time
+     */
+    Connect4Difficulty(int level, int depth, long nodeBudget, long timeBudgetMillis, boolean perfectPlay, boolean ponders)
+    {
+        this.level = level;
+        this.depth = depth;
+        this.nodeBudget = nodeBudget;
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.perfectPlay = perfectPlay;
+        this.ponders = ponders;
+    }
+
+    /**
+     * Get the number sent over the network for the level
+     *
+     * @return level number, 1 is the easiest
+     */
+    public int getLevel()
+    {
+        return level;
+    }
+
+    /**
+     * Get the milliseconds the computer may think per move at this level
+     *
+     * @return time budget, 0 for no limit
+     */
+    public long getTimeBudgetMillis()
+    {
+        return timeBudgetMillis;
+    }
+
+    /**
+     * Checks if the computer should think on the player's time at this level
+     *
+     * @return true if the computer ponders, false if it only thinks on its own turn
+     */
+    public boolean ponders()
+    {
+        return ponders;
+    }
+
+    /**
+     * Create a computer player that searches with this level's budget
+     *
+     * @return new computer player
+     */
+    public Connect4ComputerPlayer createPlayer()
+    {
+        return createPlayer(null);
+    }
+
+    /**
+     * Create a computer player that searches with this level's budget. At a perfect-play level the player's
+     * solver shares the table of another solver, so many players do not each need a table of their own.
+     *
+     * @param sharedSolver solver whose table perfect play uses, or null for a table of the player's own
+     * @return new computer player
+     */
+    public Connect4ComputerPlayer createPlayer(Connect4Solver sharedSolver)
+    {
+        Connect4ComputerPlayer computer = new Connect4ComputerPlayer(depth);
+        computer.setNodeBudget(nodeBudget);
+        computer.setTimeBudget(timeBudgetMillis);
+        if (perfectPlay && sharedSolver != null)
+        {
+            computer.setPerfectPlay(new Connect4Solver(sharedSolver));
+        } else
+        {
+            computer.setPerfectPlay(perfectPlay);
+        }
+        return computer;
+    }
+
+    /**
+     * Pick the level to play at from the level a player asked for. Unknown levels get the default and levels
+     * above the highest one allowed are lowered to it.
+     *
+     * @param requested level number the player asked for
+     * @param highest hardest level the server allows
+     * @return level to play at
+     */
+    public static Connect4Difficulty negotiate(int requested, Connect4Difficulty highest)
+    {
+        Connect4Difficulty difficulty = fromLevel(requested);
+        if (difficulty == null)
+        {
+            difficulty = DEFAULT;
+        }
+        return difficulty.level > highest.level ? highest : difficulty;
+    }
+
+    /**
+     * Get the level with a number
+     *
+     * @param level level number
+     * @return the level, or null if no level has that number
+     */
+    public static Connect4Difficulty fromLevel(int level)
+    {
+        for (Connect4Difficulty difficulty : values())
+        {
+            if (difficulty.level == level)
+            {
+                return difficulty;
+            }
+        }
+        return null;
+    }
+}
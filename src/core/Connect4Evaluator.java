@@ -0,0 +1,333 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Static evaluation of Connect4 positions for a depth-limited search. Every line of cells that can make a win is
+ * built once by Connect4Geometry, along with an index of the lines running through each cell. The evaluator keeps
+ * how many pieces each player has on every line and a running score, and both are updated when a piece is added or
+ * removed, so evaluating a position costs the same no matter how many pieces are on the board.
+ *
+ * Threats are also scored by the row they are on. The first player wins the endgame with threats on odd rows
+ * (counting the bottom row as 1) and the second player with threats on even rows, because of the order the last
+ * cells in each column fill up. A threat directly above an opponent's threat in the same column can never be
+ * used, so it does not count. On the standard board threats are found with bitwise shifts; on other boards they
+ * are read off the line counts, and the row parity only counts when the columns have an even number of rows.
+ *
+ * @author Chris Burdett
+ * @version 1.0
+ */
+public class Connect4Evaluator implements Connect4Constants
+{
+    //extra score for each threat on a row that favours its owner
+    private static final int GOOD_THREAT = 24;
+    //most a position can score, kept well clear of the scores of forced wins
+    public static final int MAX_SCORE = Connect4ComputerPlayer.WIN_SCORE / 2;
+
+    //cells on odd rows counting the bottom row as 1, and on even rows, of the standard board
+    public static final long ODD_ROWS = rowMask(0);
+    public static final long EVEN_ROWS = rowMask(1);
+
+    private final Connect4Geometry geometry;
+    private final boolean standard;
+    private final int winLength;
+    //bit indexes of the cells of each line
+    private final int[][] lines;
+    //score for a line only one player has pieces on, by the number of pieces
+    private final int[] lineWeights;
+    private final int[] player1Counts;
+    private final int[] player2Counts;
+    private int score;
+
+    //scratch space for finding threats on boards other than the standard one
+    private final byte[] threatOwners;
+    private final int[] threatCells;
+    private final int[] lowestThreat1;
+    private final int[] lowestThreat2;
+
+    /**
+     * Create an evaluator for an empty standard board
+     */
+    public Connect4Evaluator()
+    {
+        this(Connect4Geometry.STANDARD);
+    }
+
+    /**
+     * Create an evaluator for an empty board of any size
+     *
+     * @param geometry size of the board and number in a row needed to win
+     */
+    public Connect4Evaluator(Connect4Geometry geometry)
+    {
+        this.geometry = geometry;
+        standard = geometry.isStandard();
+        winLength = geometry.getWinLength();
+        lines = geometry.getLines();
+        //1, 4, 16... for each piece on the line, so a line closer to a win is always worth more. On long lines
+        //the weights only grow by one once another factor of four could take the score past MAX_SCORE.
+        int maxWeight = (MAX_SCORE - geometry.getBits() * GOOD_THREAT) / lines.length - winLength;
+        lineWeights = new int[winLength];
+        for (int i = 1; i < winLength; i++)
+        {
+            int previous = lineWeights[i - 1];
+            lineWeights[i] = i == 1 ? 1 : previous <= maxWeight / 4 ? previous * 4 : previous + 1;
+        }
+        player1Counts = new int[lines.length];
+        player2Counts = new int[lines.length];
+        score = 0;
+
+        threatOwners = new byte[standard ? 0 : geometry.getBits()];
+        threatCells = new int[threatOwners.length];
+        lowestThreat1 = new int[standard ? 0 : geometry.getWidth()];
+        lowestThreat2 = new int[lowestThreat1.length];
+    }
+
+    /**
+     * Create an evaluator for the pieces already on a board
+     *
+     * @param board board to count the pieces of
+     */
+    public Connect4Evaluator(Connect4BitBoard board)
+    {
+        this(board.getGeometry());
+        for (int col = 0; col < geometry.getWidth(); col++)
+        {
+            for (int row = 0; row < board.getHeight(col); row++)
+            {
+                addPiece(geometry.bitIndex(col, row), board.isPiece(PLAYER1, col, row) ? PLAYER1 : PLAYER2);
+            }
+        }
+    }
+
+    /**
+     * Builds the mask of every other row of the standard board
+     *
+     * @param firstRow 0 to start from the bottom row, 1 to start from the row above it
+     * @return mask of the cells on those rows
+     */
+    private static long rowMask(int firstRow)
+    {
+        long mask = 0L;
+        for (int col = 0; col < COLUMNS; col++)
+        {
+            for (int row = firstRow; row < ROWS; row += 2)
+            {
+                mask |= 1L << Connect4BitBoard.bitIndex(col, row);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Get the size of the board the evaluator counts lines for
+     *
+     * @return geometry of the board
+     */
+    public Connect4Geometry getGeometry()
+    {
+        return geometry;
+    }
+
+    /**
+     * Update the counts for a piece dropped into a cell
+     *
+     * @param cell bit index of the cell
+     * @param player player the piece belongs to
+     */
+    public void addPiece(int cell, int player)
+    {
+        int[] counts = player == PLAYER1 ? player1Counts : player2Counts;
+        for (int line : geometry.linesThrough(cell))
+        {
+            score -= lineScore(line);
+            counts[line]++;
+            score += lineScore(line);
+        }
+    }
+
+    /**
+     * Update the counts for a piece taken back out of a cell
+     *
+     * @param cell bit index of the cell
+     * @param player player the piece belongs to
+     */
+    public void removePiece(int cell, int player)
+    {
+        int[] counts = player == PLAYER1 ? player1Counts : player2Counts;
+        for (int line : geometry.linesThrough(cell))
+        {
+            score -= lineScore(line);
+            counts[line]--;
+            score += lineScore(line);
+        }
+    }
+
+    /**
+     * Scores one line from the first player's point of view. A line both players have pieces on can no
+     * longer be won and scores 0.
+     *
+     * @param line index of the line
+     * @return score of the line
+     */
+    private int lineScore(int line)
+    {
+        int mine = player1Counts[line];
+        int theirs = player2Counts[line];
+        if (mine > 0 && theirs > 0)
+        {
+            return 0;
+        }
+        return lineWeights[Math.min(mine, winLength - 1)] - lineWeights[Math.min(theirs, winLength - 1)];
+    }
+
+    /**
+     * Get the number of pieces a player has on a line
+     *
+     * @param line index of the line
+     * @param player PLAYER1 or PLAYER2
+     * @return pieces on the line
+     */
+    public int getCount(int line, int player)
+    {
+        return player == PLAYER1 ? player1Counts[line] : player2Counts[line];
+    }
+
+    /**
+     * Get the threats a player can use in the endgame on the standard board: empty cells that complete four in a
+     * row, on rows that favour the player, and not above an opponent's threat in the same column
+     *
+     * @param board standard board to check
+     * @param player PLAYER1 or PLAYER2
+     * @return mask of the player's good threats
+     */
+    public static long goodThreats(Connect4BitBoard board, int player)
+    {
+        long mask = board.getMask();
+        long mine = Connect4BitBoard.winningCells(board.getStones(player), mask);
+        long theirs = Connect4BitBoard.winningCells(board.getStones(player == PLAYER1 ? PLAYER2 : PLAYER1), mask);
+        return goodThreats(mine, theirs, player == PLAYER1 ? ODD_ROWS : EVEN_ROWS);
+    }
+
+    /**
+     * Keeps the threats on favourable rows that are not above an opponent's threat
+     *
+     * @param mine every threat of the player
+     * @param theirs every threat of the opponent
+     * @param rows rows that favour the player
+     * @return mask of the player's good threats
+     */
+    private static long goodThreats(long mine, long theirs, long rows)
+    {
+        return mine & rows & ~above(theirs);
+    }
+
+    /**
+     * Get every cell above a set of cells in the same columns
+     *
+     * @param cells cells to look above
+     * @return mask of the cells above them
+     */
+    private static long above(long cells)
+    {
+        long result = 0L;
+        for (int i = 1; i < ROWS; i++)
+        {
+            cells = (cells << 1) & Connect4BitBoard.BOARD_MASK;
+            result |= cells;
+        }
+        return result;
+    }
+
+    /**
+     * Counts the good threats of both players on a board other than the standard one. A line one player is a
+     * single piece short of filling, with none of the opponent's pieces, has its empty cell as a threat.
+     *
+     * @param board board to check, matching the line counts
+     * @return the first player's good threats minus the second player's
+     */
+    private int countGoodThreats(Connect4BitBoard board)
+    {
+        int columnBits = geometry.getColumnBits();
+        int height = geometry.getHeight();
+        Arrays.fill(lowestThreat1, height);
+        Arrays.fill(lowestThreat2, height);
+        int found = 0;
+        for (int line = 0; line < lines.length; line++)
+        {
+            int owner;
+            if (player1Counts[line] == winLength - 1 && player2Counts[line] == 0)
+            {
+                owner = PLAYER1;
+            } else if (player2Counts[line] == winLength - 1 && player1Counts[line] == 0)
+            {
+                owner = PLAYER2;
+            } else
+            {
+                continue;
+            }
+            for (int cell : lines[line])
+            {
+                int col = cell / columnBits;
+                int row = cell % columnBits;
+                if (!board.isPiece(owner, col, row))
+                {
+                    if (threatOwners[cell] == 0)
+                    {
+                        threatCells[found++] = cell;
+                    }
+                    threatOwners[cell] |= owner;
+                    int[] lowest = owner == PLAYER1 ? lowestThreat1 : lowestThreat2;
+                    lowest[col] = Math.min(lowest[col], row);
+                    break;
+                }
+            }
+        }
+
+        //with an odd number of rows the zugzwang no longer favours one parity, so every row counts
+        boolean parity = height % 2 == 0;
+        int threats = 0;
+        for (int i = 0; i < found; i++)
+        {
+            int cell = threatCells[i];
+            int col = cell / columnBits;
+            int row = cell % columnBits;
+            if ((threatOwners[cell] & PLAYER1) != 0 && (!parity || row % 2 == 0) && row <= lowestThreat2[col])
+            {
+                threats++;
+            }
+            if ((threatOwners[cell] & PLAYER2) != 0 && (!parity || row % 2 == 1) && row <= lowestThreat1[col])
+            {
+                threats--;
+            }
+            threatOwners[cell] = 0;
+        }
+        return threats;
+    }
+
+    /**
+     * Scores a position for a player. The line counts must match the board.
+     *
+     * @param board board to evaluate
+     * @param player player to score the position for
+     * @return positive if the position favours the player, negative if it favours the opponent, and never more
+     * than MAX_SCORE either way
+     */
+    public int evaluate(Connect4BitBoard board, int player)
+    {
+        int threats;
+        if (standard)
+        {
+            long mask = board.getMask();
+            long threats1 = Connect4BitBoard.winningCells(board.getStones(PLAYER1), mask);
+            long threats2 = Connect4BitBoard.winningCells(board.getStones(PLAYER2), mask);
+            threats = Long.bitCount(goodThreats(threats1, threats2, ODD_ROWS))
+                    - Long.bitCount(goodThreats(threats2, threats1, EVEN_ROWS));
+        } else
+        {
+            threats = countGoodThreats(board);
+        }
+        int total = score + threats * GOOD_THREAT;
+        return player == PLAYER1 ? total : -total;
+    }
+}
@@ -0,0 +1,293 @@
+package core;
+
+/**
+ * Size of a Connect4 board and the number of pieces in a row needed to win. The standard game is 7 columns,
+ * 6 rows and four in a row, but variants such as 8 columns by 7 rows or five in a row use the same engine.
+ *
+ * Boards are laid out like Connect4BitBoard: one column after another, with a spare bit on top of each column.
+ * Boards whose layout fits in 64 bits keep each player's pieces in a single long, and larger boards use a second
+ * long. A layout can be up to MAX_BITS bits, and a board can be up to MAX_WIDTH columns wide so that a column
+ * still fits in the move field of the transposition table.
+ *
+ * The geometry also holds every line of winLength cells on the board and the lines running through each cell,
+ * which the evaluator uses to keep its counts.
+ *
+ * @author Chris Burdett
+ * @version 1.0
+ */
+public final class Connect4Geometry implements Connect4Constants
+{
+    public static final int MAX_BITS = 2 * Long.SIZE;
+    public static final int MAX_WIDTH = 15;
+
+    public static final Connect4Geometry STANDARD = new Connect4Geometry(COLUMNS, ROWS, 4);
+
+    private final int width;
+    private final int height;
+    private final int winLength;
+    private final int h1;
+    private final int[][] lines;
+    private final int[][] cellLines;
+    private final int[] centerOrder;
+
+    /**
+     * Create a board size
+     *
+     * @param width number of columns
+     * @param height number of rows
+     * @param winLength number of pieces in a row needed to win
+     * @throws IllegalArgumentException if the board does not fit in two longs or nobody could ever win on it
+     */
+    public Connect4Geometry(int width, int height, int winLength)
+    {
+        if (width < 1 || height < 1 || width > MAX_WIDTH || width * (height + 1) > MAX_BITS)
+        {
+            throw new IllegalArgumentException("a board of " + width + " columns and " + height + " rows is not supported");
+        }
+        if (winLength < 2 || winLength > Math.max(width, height))
+        {
+            throw new IllegalArgumentException("cannot win with " + winLength + " in a row on this board");
+        }
+        this.width = width;
+        this.height = height;
+        this.winLength = winLength;
+        h1 = height + 1;
+        lines = buildLines();
+        cellLines = buildCellLines();
+        centerOrder = buildCenterOrder();
+    }
+
+    /**
+     * Builds every line of winLength cells: vertical, horizontal, diagonal up right and diagonal down right
+     *
+     * @return bit indexes of the cells of each line
+     */
+    private int[][] buildLines()
+    {
+        int[][] steps = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+        int count = 0;
+        int[][] found = new int[4 * width * height][];
+        for (int[] step : steps)
+        {
+            for (int col = 0; col < width; col++)
+            {
+                for (int row = 0; row < height; row++)
+                {
+                    int endCol = col + step[0] * (winLength - 1);
+                    int endRow = row + step[1] * (winLength - 1);
+                    if (endCol >= width || endRow < 0 || endRow >= height)
+                    {
+                        continue;
+                    }
+                    int[] line = new int[winLength];
+                    for (int i = 0; i < winLength; i++)
+                    {
+                        line[i] = bitIndex(col + step[0] * i, row + step[1] * i);
+                    }
+                    found[count++] = line;
+                }
+            }
+        }
+        int[][] result = new int[count][];
+        System.arraycopy(found, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Builds the index of the lines running through each cell
+     *
+     * @return line indexes for each bit index
+     */
+    private int[][] buildCellLines()
+    {
+        int[] counts = new int[getBits()];
+        for (int[] line : lines)
+        {
+            for (int cell : line)
+            {
+                counts[cell]++;
+            }
+        }
+        int[][] result = new int[getBits()][];
+        for (int cell = 0; cell < result.length; cell++)
+        {
+            result[cell] = new int[counts[cell]];
+            counts[cell] = 0;
+        }
+        for (int line = 0; line < lines.length; line++)
+        {
+            for (int cell : lines[line])
+            {
+                result[cell][counts[cell]++] = line;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds the order columns are tried in when nothing better is known, from the center out
+     *
+     * @return column indexes, starting at 0
+     */
+    private int[] buildCenterOrder()
+    {
+        int[] order = new int[width];
+        for (int i = 0; i < width; i++)
+        {
+            order[i] = (width - 1) / 2 + (1 - 2 * ((i + width + 1) % 2)) * (i + 1) / 2;
+        }
+        return order;
+    }
+
+    /**
+     * Get the number of columns
+     *
+     * @return width of the board
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * Get the number of rows
+     *
+     * @return height of the board
+     */
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * Get the number of pieces in a row needed to win
+     *
+     * @return win length
+     */
+    public int getWinLength()
+    {
+        return winLength;
+    }
+
+    /**
+     * Get the number of bits each column takes up, including the spare bit on top
+     *
+     * @return height plus one
+     */
+    public int getColumnBits()
+    {
+        return h1;
+    }
+
+    /**
+     * Get the number of bits in the board's layout, including the spare bit on top of each column
+     *
+     * @return number of bits used to store one player's pieces
+     */
+    public int getBits()
+    {
+        return width * h1;
+    }
+
+    /**
+     * Get the number of cells pieces can be dropped into
+     *
+     * @return width times height
+     */
+    public int getCells()
+    {
+        return width * height;
+    }
+
+    /**
+     * Checks if each player's pieces fit in a single long
+     *
+     * @return true if the layout is at most 64 bits
+     */
+    public boolean fitsInLong()
+    {
+        return getBits() <= Long.SIZE;
+    }
+
+    /**
+     * Checks if this is the standard 7 column, 6 row, four in a row game
+     *
+     * @return true for the standard game
+     */
+    public boolean isStandard()
+    {
+        return width == COLUMNS && height == ROWS && winLength == 4;
+    }
+
+    /**
+     * Get the bit index of a cell on the board
+     *
+     * @param col column of the cell, 0 is the leftmost column
+     * @param row row of the cell, 0 is the bottom row
+     * @return index of the bit representing the cell
+     */
+    public int bitIndex(int col, int row)
+    {
+        return col * h1 + row;
+    }
+
+    /**
+     * Get the lines a player can win on
+     *
+     * @return bit indexes of the cells of each line, do not modify
+     */
+    public int[][] getLines()
+    {
+        return lines;
+    }
+
+    /**
+     * Get the lines running through a cell
+     *
+     * @param cell bit index of the cell
+     * @return indexes into getLines(), do not modify
+     */
+    public int[] linesThrough(int cell)
+    {
+        return cellLines[cell];
+    }
+
+    /**
+     * Get the order columns should be tried in when nothing better is known
+     *
+     * @return column indexes from the center out, do not modify
+     */
+    public int[] getCenterOrder()
+    {
+        return centerOrder;
+    }
+
+    /**
+     * Checks if another geometry describes the same board and win length
+     *
+     * @param other object to compare with
+     * @return true if the width, height and win length all match
+     */
+    @Override
+    public boolean equals(Object other)
+    {
+        if (!(other instanceof Connect4Geometry))
+        {
+            return false;
+        }
+        Connect4Geometry geometry = (Connect4Geometry) other;
+        return width == geometry.width && height == geometry.height && winLength == geometry.winLength;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return (width * 31 + height) * 31 + winLength;
+    }
+
+    @Override
+    public String toString()
+    {
+        return width + "x" + height + " connect " + winLength;
+    }
+}
@@ -0,0 +1,314 @@
+package core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Load test that holds many sessions open on a server and reports how much heap, resident memory and how many
+ * platform threads they cost. Every session is set up, then every session plays one move while all of them are
+ * still open, so the server is shown to be serving them all at the same time.
+ *
+ * The server runs in this JVM in threads mode, virtual mode or nio mode, as chosen by the connect4.serverMode
+ * property of Connect4Server, and its costs are measured from after it has started. The players run in a second
+ * JVM started by the test, so their sockets and streams are not counted. Player vs player sessions use two sockets
+ * each and player vs computer sessions one, so 10000 player vs player sessions need an open file limit above 20000
+ * in both JVMs.
+ *
+ * @author Chris Burdett
+ * @version 1.0
+ */
+public class Connect4LoadTest implements Connect4Constants
+{
+    public static final int DEFAULT_SESSIONS = 10000;
+
+    /**
+     * Both players of one session, seen from the client side. In a player vs computer session there is only
+     * player one.
+     */
+    private static class Session
+    {
+        private final boolean pvp;
+        private final Socket player1;
+        private final Socket player2;
+        private final DataInputStream fromServer1;
+        private final DataOutputStream toServer1;
+        private final DataInputStream fromServer2;
+        private final byte[] frame = new byte[MOVE_FRAME_BYTES];
+
+        /**
+         * Connect the players and go through the handshake of a text game
+         *
+         * @param port port the server listens on
+         * @param pvp true for a player vs player session, false to play the computer at EASY
+         * @throws IOException if a player cannot connect or the server closes the connection
+         */
+        Session(int port, boolean pvp) throws IOException
+        {
+            this.pvp = pvp;
+            player1 = new Socket("localhost", port);
+            fromServer1 = new DataInputStream(new BufferedInputStream(player1.getInputStream(), 64));
+            toServer1 = new DataOutputStream(new BufferedOutputStream(player1.getOutputStream(), 64));
+            expect(PLAYER1, fromServer1.readInt());
+            toServer1.writeBoolean(true);
+            toServer1.writeBoolean(pvp);
+            if (!pvp)
+            {
+                toServer1.writeInt(Connect4Difficulty.EASY.getLevel());
+                toServer1.flush();
+                expect(Connect4Difficulty.EASY.getLevel(), fromServer1.readInt());
+                player2 = null;
+                fromServer2 = null;
+                return;
+            }
+            toServer1.flush();
+
+            player2 = new Socket("localhost", port);
+            fromServer2 = new DataInputStream(new BufferedInputStream(player2.getInputStream(), 64));
+            expect(PLAYER2, fromServer2.readInt());
+            fromServer2.readBoolean();
+            expect(PLAYER1, fromServer1.readInt());
+        }
+
+        /**
+         * Play player one's first move and wait until every player is told about it, and about the computer's
+         * answer in a player vs computer session
+         *
+         * @throws IOException if the server closes the connection
+         */
+        void playMove() throws IOException
+        {
+            toServer1.writeInt(4);
+            toServer1.flush();
+            if (!fromServer1.readBoolean())
+            {
+                throw new IllegalStateException("server refused the first move");
+            }
+            readFrame(fromServer1);
+            if (pvp)
+            {
+                readFrame(fromServer2);
+            } else
+            {
+                readFrame(fromServer1); //the computer's move
+            }
+        }
+
+        /**
+         * Reads a move frame and checks the game goes on
+         *
+         * @param in player to read from
+         * @throws IOException if the server closes the connection
+         */
+        private void readFrame(DataInputStream in) throws IOException
+        {
+            in.readFully(frame);
+            expect(CONTINUE, ByteBuffer.wrap(frame).getInt(MOVE_FRAME_BYTES - Integer.BYTES));
+        }
+
+        /**
+         * Disconnect the players
+         */
+        void close()
+        {
+            try
+            {
+                player1.close();
+                if (player2 != null)
+                {
+                    player2.close();
+                }
+            } catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * Checks a value read from the server
+         *
+         * @param expected value the protocol sends at this point
+         * @param actual value read
+         */
+        private static void expect(int expected, int actual)
+        {
+            if (expected != actual)
+            {
+                throw new IllegalStateException("expected " + expected + " from the server but got " + actual);
+            }
+        }
+    }
+
+    /**
+     * The players' JVM. Opens the sessions, then waits for a line on standard input before playing a move in
+     * each and another before disconnecting, reporting back on standard output after each step.
+     */
+    public static class Players
+    {
+        public static void main(String[] args) throws IOException
+        {
+            int port = Integer.parseInt(args[0]);
+            int sessions = Integer.parseInt(args[1]);
+            boolean pvp = args[2].equals("pvp");
+            BufferedReader commands = new BufferedReader(new InputStreamReader(System.in));
+
+            List<Session> open = new ArrayList<>();
+            long start = System.nanoTime();
+            try
+            {
+                while (open.size() < sessions)
+                {
+                    open.add(new Session(port, pvp));
+                }
+            } catch (IOException e)
+            {
+                System.err.println("Stopped after " + open.size() + " sessions: " + e.getMessage());
+            }
+            System.out.println(open.size() + " " + (System.nanoTime() - start));
+
+            commands.readLine();
+            start = System.nanoTime();
+            for (Session session : open)
+            {
+                session.playMove();
+            }
+            System.out.println(System.nanoTime() - start);
+
+            commands.readLine();
+            for (Session session : open)
+            {
+                session.close();
+            }
+        }
+    }
+
+    /**
+     * Gets the heap in use after a full collection
+     *
+     * @return bytes of live objects, approximately
+     */
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Gets the memory of this process held in RAM, which includes the stacks of platform threads
+     *
+     * @return resident bytes, or 0 where /proc is not available
+     */
+    private static long residentMemory()
+    {
+        try
+        {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status")))
+            {
+                if (line.startsWith("VmRSS:"))
+                {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException e)
+        {
+            //not Linux
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the number of platform threads in the JVM. Virtual threads are not counted.
+     *
+     * @return live platform threads
+     */
+    private static int platformThreads()
+    {
+        return ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length > 3)
+        {
+            System.out.println("Usage: java core.Connect4LoadTest [sessions] [threads|virtual|nio] [pvp|pvc]");
+            return;
+        }
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SESSIONS;
+        String mode = args.length > 1 ? args[1] : "virtual";
+        String type = args.length > 2 ? args[2] : "pvp";
+        System.out.println("Java " + Runtime.version() + ", " + mode + " mode, " + sessions + " " + type + " sessions");
+
+        Connect4Server server = new Connect4Server();
+        ServerSocket serverSocket = null;
+        Connect4NioServer nioServer = null;
+        int port;
+        if (mode.equals("nio"))
+        {
+            nioServer = server.createNioServer(0, message -> { });
+            nioServer.start();
+            port = nioServer.getPort();
+        } else
+        {
+            Executor executor = Connect4Server.createSessionExecutor(mode, System.out::println);
+            ServerSocket listening = new ServerSocket(0, sessions);
+            executor.execute(() -> server.serve(listening, executor, message -> { }));
+            serverSocket = listening;
+            port = listening.getLocalPort();
+        }
+
+        long heapBefore = usedHeap();
+        long residentBefore = residentMemory();
+        int threadsBefore = platformThreads();
+
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process players = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                Players.class.getName(), String.valueOf(port), String.valueOf(sessions), type)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        BufferedReader reports = new BufferedReader(new InputStreamReader(players.getInputStream()));
+        PrintWriter commands = new PrintWriter(players.getOutputStream(), true);
+
+        String[] opened = reports.readLine().split(" ");
+        int open = Integer.parseInt(opened[0]);
+        double setupSeconds = Long.parseLong(opened[1]) / 1e9;
+        long heap = usedHeap() - heapBefore;
+        long resident = residentMemory() - residentBefore;
+        int threads = platformThreads() - threadsBefore;
+
+        commands.println("move");
+        double moveMicros = open == 0 ? 0 : Long.parseLong(reports.readLine()) / 1e3 / open;
+
+        System.out.printf("%d sessions open, set up at %.0f sessions/s, %.1f us per move%n",
+                open, open / setupSeconds, moveMicros);
+        System.out.printf("heap %.1f MB (%.0f bytes per session), resident %.1f MB (%.0f bytes per session), "
+                        + "%d more platform threads%n",
+                heap / 1048576.0, open == 0 ? 0.0 : (double) heap / open,
+                resident / 1048576.0, open == 0 ? 0.0 : (double) resident / open, threads);
+
+        if (nioServer != null)
+        {
+            nioServer.shutdown();
+        } else
+        {
+            serverSocket.close();
+        }
+        //exit before the players disconnect, so the sessions do not each report a lost player
+        commands.println("close");
+        System.exit(0);
+    }
+}
@@ -0,0 +1,528 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Computer player that picks moves with Monte Carlo Tree Search. Each search thread grows its own tree from the
+ * current position using UCT to choose which moves to explore, plays random games from the end of the tree, and the
+ * root moves of every tree are added up once every thread has used its share of the budget (root parallelism). The column visited most is played.
+ *
+ * Tree nodes live in arrays that are allocated once per thread, and random games use a xorshift generator, so a
+ * search does not allocate once the pools exist.
+ *
+ * @author Chris Burdett
+ * @version 1.0
+ */
+public class Connect4MonteCarloPlayer implements Connect4Constants, Connect4Player
+{
+    public static final int DEFAULT_POOL_SIZE = 1 << 18;
+    public static final long DEFAULT_PLAYOUTS = 20000;
+    public static final double EXPLORATION = 1.41;
+
+    private final int poolSize;
+    private final List<Tree> trees;
+    private ExecutorService helpers;
+    private long playoutBudget;
+    private long timeBudgetMillis;
+    private long deadline;
+    private long playouts;
+    private long searchNanos;
+    private int colSelection;
+
+    /**
+     * Create a single threaded player with the default node pool and playout budget
+     */
+    public Connect4MonteCarloPlayer()
+    {
+        this(DEFAULT_POOL_SIZE, 1);
+    }
+
+    /**
+     * Create a player that searches with a number of threads
+     *
+     * @param poolSize number of tree nodes each thread can allocate
+     * @param threads number of search threads, at least 1
+     */
+    public Connect4MonteCarloPlayer(int poolSize, int threads)
+    {
+        if (threads < 1)
+        {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.poolSize = poolSize;
+        trees = new ArrayList<>();
+        for (int i = 0; i < threads; i++)
+        {
+            trees.add(new Tree(poolSize, 0x9E3779B97F4A7C15L * (i + 1)));
+        }
+        if (threads > 1)
+        {
+            helpers = Executors.newFixedThreadPool(threads - 1, runnable -> {
+                Thread thread = new Thread(runnable, "Connect4Playouts");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        playoutBudget = DEFAULT_PLAYOUTS;
+        timeBudgetMillis = 0;
+        colSelection = 0;
+    }
+
+    /**
+     * Limit the number of random games played for each move, shared between the threads
+     *
+     * @param playouts random games allowed per move, 0 for no limit
+     */
+    public void setPlayoutBudget(long playouts)
+    {
+        playoutBudget = playouts;
+    }
+
+    /**
+     * Limit how long the computer may think about each move
+     *
+     * @param millis milliseconds allowed per move, 0 for no limit
+     */
+    public void setTimeBudget(long millis)
+    {
+        timeBudgetMillis = millis;
+    }
+
+    /**
+     * Stop the helper threads. The player cannot choose moves afterwards.
+     */
+    public void shutdown()
+    {
+        if (helpers != null)
+        {
+            helpers.shutdownNow();
+            helpers = null;
+        }
+    }
+
+    /**
+     * Choose the column whose subtree was visited the most across every search thread
+     *
+     * @param board board to choose a move for
+     * @param player PLAYER1 or PLAYER2
+     * @return column selection, starting at 1, or 0 if the board is full
+     */
+    @Override
+    public int chooseCol(Connect4BitBoard board, int player)
+    {
+        if (board.legalMovesMask() == 0)
+        {
+            return 0;
+        }
+        int width = board.getGeometry().getWidth();
+        for (int col = 0; col < width; col++)
+        {
+            if (board.canPlay(col) && board.isWinningMove(col, player))
+            {
+                playouts = 0;
+                colSelection = col + 1;
+                return colSelection;
+            }
+        }
+        if (playoutBudget <= 0 && timeBudgetMillis <= 0)
+        {
+            throw new IllegalStateException("Monte Carlo search needs a playout or time budget");
+        }
+
+        long start = System.nanoTime();
+        deadline = timeBudgetMillis > 0 ? start + timeBudgetMillis * 1000000L : Long.MAX_VALUE;
+        long perTree = playoutBudget > 0 ? Math.max(1, playoutBudget / trees.size()) : Long.MAX_VALUE;
+
+        List<Future<?>> running = new ArrayList<>();
+        for (int i = 1; i < trees.size(); i++)
+        {
+            Tree tree = trees.get(i);
+            running.add(helpers.submit(() -> tree.search(board, player, perTree)));
+        }
+        trees.get(0).search(board, player, perTree);
+        for (Future<?> helper : running)
+        {
+            try
+            {
+                helper.get();
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e)
+            {
+                e.printStackTrace();
+            }
+        }
+        searchNanos = System.nanoTime() - start;
+
+        long[] visits = new long[width];
+        playouts = 0;
+        for (Tree tree : trees)
+        {
+            tree.addRootVisits(visits);
+            playouts += tree.playouts;
+        }
+        int bestCol = -1;
+        for (int col = 0; col < width; col++)
+        {
+            if (board.canPlay(col) && (bestCol < 0 || visits[col] > visits[bestCol]))
+            {
+                bestCol = col;
+            }
+        }
+
+        colSelection = bestCol + 1;
+        return colSelection;
+    }
+
+    /**
+     * Get the number of random games played for the last move, counting every thread
+     *
+     * @return number of playouts
+     */
+    public long getPlayouts()
+    {
+        return playouts;
+    }
+
+    /**
+     * Get how fast random games were played for the last move, counting every thread
+     *
+     * @return playouts per second
+     */
+    public long getPlayoutsPerSecond()
+    {
+        return searchNanos > 0 ? playouts * 1000000000L / searchNanos : 0;
+    }
+
+    /**
+     * Get the number of tree nodes each thread can allocate
+     *
+     * @return size of each thread's node pool
+     */
+    public int getPoolSize()
+    {
+        return poolSize;
+    }
+
+    /**
+     * One thread's search tree. Nodes are indexes into preallocated arrays and node 0 is the root. The arrays
+     * are sized for the board being searched and only reallocated when a board of a different size comes along.
+     */
+    private class Tree
+    {
+        private static final byte OPEN = 0;
+        private static final byte WIN = 1;
+        private static final byte DRAW = 2;
+
+        private final int[] visits;
+        private final float[] wins;
+        private final short[] expanded;
+        private final byte[] terminal;
+        private Connect4Geometry geometry;
+        private int width;
+        private int[] children;
+        private int[] pathNodes;
+        private int[] pathCols;
+        private int[] rolloutCols;
+        private int size;
+        private long seed;
+        private long playouts;
+
+        /**
+         * Allocate the node pool
+         *
+         * @param capacity number of nodes in the pool
+         * @param seed starting state of the random number generator, not 0
+         */
+        Tree(int capacity, long seed)
+        {
+            visits = new int[capacity];
+            wins = new float[capacity];
+            expanded = new short[capacity];
+            terminal = new byte[capacity];
+            this.seed = seed;
+            resize(Connect4Geometry.STANDARD);
+        }
+
+        /**
+         * Size the arrays that depend on the board for a board of a different size
+         *
+         * @param geometry size of the board to search
+         */
+        private void resize(Connect4Geometry geometry)
+        {
+            this.geometry = geometry;
+            width = geometry.getWidth();
+            children = new int[visits.length * width];
+            pathNodes = new int[geometry.getCells() + 2];
+            pathCols = new int[geometry.getCells() + 2];
+            rolloutCols = new int[geometry.getCells()];
+        }
+
+        /**
+         * Grow the tree from a position until the budget runs out
+         *
+         * @param root board to search
+         * @param rootPlayer player about to move
+         * @param budget playouts this tree may run
+         */
+        void search(Connect4BitBoard root, int rootPlayer, long budget)
+        {
+            Connect4BitBoard board = new Connect4BitBoard(root);
+            if (!board.getGeometry().equals(geometry))
+            {
+                resize(board.getGeometry());
+            }
+            size = 1;
+            playouts = 0;
+            clearNode(0);
+
+            while (playouts < budget && ((playouts & 63) != 0 || System.nanoTime() < deadline))
+            {
+                playout(board, rootPlayer);
+                playouts++;
+            }
+        }
+
+        /**
+         * Runs one iteration: select down the tree with UCT, expand one node, play a random game and
+         * add the result to every node on the path
+         *
+         * @param board board at the root, restored before returning
+         * @param rootPlayer player about to move at the root
+         */
+        private void playout(Connect4BitBoard board, int rootPlayer)
+        {
+            int node = 0;
+            int player = rootPlayer;
+            int length = 0;
+            pathNodes[length++] = 0;
+
+            while (terminal[node] == OPEN)
+            {
+                int legal = board.legalMovesMask();
+                int untried = legal & ~expanded[node];
+                if (untried != 0 && size < visits.length)
+                {
+                    int col = pickBit(untried);
+                    int child = size++;
+                    clearNode(child);
+                    if (board.isWinningMove(col, player))
+                    {
+                        terminal[child] = WIN;
+                    }
+                    board.drop(col, player);
+                    if (terminal[child] == OPEN && board.legalMovesMask() == 0)
+                    {
+                        terminal[child] = DRAW;
+                    }
+                    children[node * width + col] = child;
+                    expanded[node] |= (short) (1 << col);
+                    pathNodes[length] = child;
+                    pathCols[length++] = col;
+                    player = opponent(player);
+                    node = child;
+                    break;
+                }
+                if (untried != 0)
+                {
+                    break; //pool is full, play a random game from here
+                }
+
+                int col = selectChild(node);
+                board.drop(col, player);
+                node = children[node * width + col];
+                pathNodes[length] = node;
+                pathCols[length++] = col;
+                player = opponent(player);
+            }
+
+            int winner;
+            if (terminal[node] == WIN)
+            {
+                winner = opponent(player);
+            } else if (terminal[node] == DRAW)
+            {
+                winner = 0;
+            } else
+            {
+                winner = rollout(board, player);
+            }
+
+            //the player who moved into a node is the opponent of the player to move there
+            int mover = opponent(player);
+            for (int i = length - 1; i >= 0; i--)
+            {
+                int n = pathNodes[i];
+                visits[n]++;
+                wins[n] += winner == mover ? 1f : winner == 0 ? 0.5f : 0f;
+                mover = opponent(mover);
+            }
+            for (int i = length - 1; i >= 1; i--)
+            {
+                board.undrop(pathCols[i]);
+            }
+        }
+
+        /**
+         * Picks the child with the highest UCT value. Every legal move of the node must have a child.
+         *
+         * @param node node to choose from
+         * @return column of the chosen child
+         */
+        private int selectChild(int node)
+        {
+            double logVisits = Math.log(visits[node]);
+            double best = -1;
+            int bestCol = 0;
+            for (int col = 0; col < width; col++)
+            {
+                int child = children[node * width + col];
+                if (child == 0)
+                {
+                    continue;
+                }
+                double value = wins[child] / visits[child] + EXPLORATION * Math.sqrt(logVisits / visits[child]);
+                if (value > best)
+                {
+                    best = value;
+                    bestCol = col;
+                }
+            }
+            return bestCol;
+        }
+
+        /**
+         * Plays random moves until the game ends, taking a win whenever one is available, then takes them back
+         *
+         * @param board board to play on, restored before returning
+         * @param player player about to move
+         * @return PLAYER1 or PLAYER2 for the winner, or 0 for a draw
+         */
+        private int rollout(Connect4BitBoard board, int player)
+        {
+            int played = 0;
+            int winner = 0;
+            int legal;
+            while ((legal = board.legalMovesMask()) != 0)
+            {
+                int col = winningColumn(board, player, legal);
+                if (col >= 0)
+                {
+                    winner = player;
+                    break;
+                }
+                col = pickBit(legal);
+                board.drop(col, player);
+                rolloutCols[played++] = col;
+                player = opponent(player);
+            }
+            for (int i = played - 1; i >= 0; i--)
+            {
+                board.undrop(rolloutCols[i]);
+            }
+            return winner;
+        }
+
+        /**
+         * Finds a column that wins right away
+         *
+         * @param board board to check
+         * @param player player about to move
+         * @param legal columns that are not full
+         * @return winning column, or -1 if there is none
+         */
+        private int winningColumn(Connect4BitBoard board, int player, int legal)
+        {
+            if (!geometry.isStandard())
+            {
+                for (; legal != 0; legal &= legal - 1)
+                {
+                    int col = Integer.numberOfTrailingZeros(legal);
+                    if (board.isWinningMove(col, player))
+                    {
+                        return col;
+                    }
+                }
+                return -1;
+            }
+            long cells = Connect4BitBoard.winningCells(board.getStones(player), board.getMask())
+                    & (board.getMask() + Connect4BitBoard.BOTTOM_MASK);
+            if (cells == 0)
+            {
+                return -1;
+            }
+            return Long.numberOfTrailingZeros(cells) / Connect4BitBoard.H1;
+        }
+
+        /**
+         * Picks one set bit at random with a xorshift generator
+         *
+         * @param bits mask with at least one bit set
+         * @return index of the chosen bit
+         */
+        private int pickBit(int bits)
+        {
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            int k = (int) ((seed >>> 33) % Integer.bitCount(bits));
+            for (int i = 0; i < k; i++)
+            {
+                bits &= bits - 1;
+            }
+            return Integer.numberOfTrailingZeros(bits);
+        }
+
+        /**
+         * Reset a node taken from the pool
+         *
+         * @param node node to reset
+         */
+        private void clearNode(int node)
+        {
+            visits[node] = 0;
+            wins[node] = 0f;
+            expanded[node] = 0;
+            terminal[node] = OPEN;
+            for (int col = 0; col < width; col++)
+            {
+                children[node * width + col] = 0;
+            }
+        }
+
+        /**
+         * Add the visits of each root move to a running total
+         *
+         * @param totals visits per column
+         */
+        void addRootVisits(long[] totals)
+        {
+            for (int col = 0; col < width; col++)
+            {
+                int child = children[col];
+                if (child != 0)
+                {
+                    totals[col] += visits[child];
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the other player
+     *
+     * @param player PLAYER1 or PLAYER2
+     * @return the player that is not the given player
+     */
+    private static int opponent(int player)
+    {
+        return player == PLAYER1 ? PLAYER2 : PLAYER1;
+    }
+}
@@ -0,0 +1,1025 @@
+package core;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Game server that handles every connection on a small, fixed set of reactor threads instead of a thread per
+ * session. Each reactor waits on a Selector for any of its connections to become readable or writable and moves
+ * that connection's session one step forward, so a player who is connected but thinking costs a couple of small
+ * buffers and no thread.
+ *
+ * The server speaks exactly the same protocol as the blocking Connect4Server, so the same clients connect to
+ * either. Players are paired in the order they connect, as before: the first connection is greeted as player 1,
+ * and the connections after it wait until that player has picked a game type. If they pick player vs player the
+ * next connection becomes their player 2; otherwise the next connection is greeted as player 1 of a new session.
+ *
+ * Both players of a game are handled by the same reactor, so a game is only ever touched by one thread. The
+ * computer's moves are computed on a Connect4ComputerPool and handed back to the reactor when they are ready.
+ *
+ * @author Chris Burdett
+ * @version 1.0
+ */
+public class Connect4NioServer implements Connect4Constants
+{
+    //bytes buffered for reading per connection, enough for a few moves sent ahead of the player's turn
+    private static final int IN_BYTES = 16;
+    //starting size of the write buffer per connection, grown when a burst of messages does not fit
+    private static final int OUT_BYTES = 32;
+
+    private final int port;
+    private final Reactor[] reactors;
+    private final Connect4ComputerPool computerPool;
+    private final Function<Connect4Difficulty, Connect4ComputerPlayer> computers;
+    private final AtomicInteger connections;
+    private Connect4Difficulty maxDifficulty;
+    private boolean pondering;
+    private Consumer<String> log;
+    private ServerSocketChannel serverChannel;
+
+    //connections not greeted yet, in the order they connected
+    private final ArrayDeque<Connection> waiting;
+    //player 1 of the session being set up, who has not picked a game type or is waiting for an opponent
+    private Connection host;
+    private int nextReactor;
+    private int sessionNum;
+
+    /**
+     * Create a server. Nothing is opened until start() is called.
+     *
+     * @param port port to listen on, 0 for any free port
+     * @param reactors number of threads handling connections, at least 1
+     * @param computerPool workers that compute the computer's moves
+     * @param computers creates the computer player for a player vs computer session at a difficulty
+     * @throws IOException if a selector cannot be opened
+     */
+    public Connect4NioServer(int port, int reactors, Connect4ComputerPool computerPool,
+                             Function<Connect4Difficulty, Connect4ComputerPlayer> computers) throws IOException
+    {
+        if (reactors < 1)
+        {
+            throw new IllegalArgumentException("need at least 1 reactor thread");
+        }
+        this.port = port;
+        this.computerPool = computerPool;
+        this.computers = computers;
+        this.reactors = new Reactor[reactors];
+        for (int i = 0; i < reactors; i++)
+        {
+            this.reactors[i] = new Reactor(i);
+        }
+        connections = new AtomicInteger();
+        maxDifficulty = Connect4Difficulty.EXPERT;
+        pondering = true;
+        log = message -> { };
+        waiting = new ArrayDeque<>();
+        sessionNum = 1;
+    }
+
+    /**
+     * Set the hardest difficulty players are given. Must be called before start().
+     *
+     * @param highest hardest level allowed
+     */
+    public void setMaxDifficulty(Connect4Difficulty highest)
+    {
+        maxDifficulty = highest;
+    }
+
+    /**
+     * Let the computer think on the player's time at difficulties that allow it. Must be called before start().
+     *
+     * @param ponder true to ponder, false to only think on the computer's turn
+     */
+    public void setPondering(boolean ponder)
+    {
+        pondering = ponder;
+    }
+
+    /**
+     * Set where messages about players joining and sessions starting go. Must be called before start().
+     *
+     * @param log receives one line per event, from reactor threads
+     */
+    public void setLog(Consumer<String> log)
+    {
+        this.log = log;
+    }
+
+    /**
+     * Start listening and start the reactor threads
+     *
+     * @throws IOException if the port cannot be opened
+     */
+    public void start() throws IOException
+    {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(reactors[0].selector, SelectionKey.OP_ACCEPT);
+        for (Reactor reactor : reactors)
+        {
+            Thread thread = new Thread(reactor, "Connect4Reactor-" + reactor.id);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        log.accept("Server started at socket " + getPort() + " with " + reactors.length + " reactor threads");
+    }
+
+    /**
+     * Get the port the server is listening on
+     *
+     * @return port number, useful when the server was created with port 0
+     */
+    public int getPort()
+    {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Get the number of players connected
+     *
+     * @return open connections, including players waiting to be greeted
+     */
+    public int getConnections()
+    {
+        return connections.get();
+    }
+
+    /**
+     * Stop accepting players and close every connection
+     */
+    public void shutdown()
+    {
+        try
+        {
+            serverChannel.close();
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        for (Reactor reactor : reactors)
+        {
+            reactor.stop();
+        }
+    }
+
+    /**
+     * Queue a new connection and greet it if nobody else is ahead of it
+     *
+     * @param connection connection that was just accepted
+     */
+    private synchronized void arrived(Connection connection)
+    {
+        waiting.add(connection);
+        match();
+    }
+
+    /**
+     * Greets the next connection as player 1 when no session is being set up, and gives a host who wants to play
+     * another player the next connection as player 2
+     */
+    private synchronized void match()
+    {
+        while (!waiting.isEmpty())
+        {
+            if (host == null)
+            {
+                host = waiting.poll();
+                Reactor reactor = reactors[nextReactor++ % reactors.length];
+                Connection greeted = host;
+                int session = sessionNum;
+                reactor.execute(greeted, () -> greeted.greet(reactor, session));
+            } else if (host.state == Connection.WAITING_FOR_OPPONENT)
+            {
+                Connection player1 = host;
+                Connection player2 = waiting.poll();
+                host = null;
+                int session = sessionNum++;
+                player1.reactor.execute(player1, () -> startPlayerGame(player1, player2, session));
+            } else
+            {
+                return; //the host is still choosing, everyone else waits
+            }
+        }
+    }
+
+    /**
+     * Called when the host picks a game type or leaves, so the next connection can be handled
+     *
+     * @param connection the host
+     * @param pvp true if the host wants to play another player, false if they play the computer or left
+     * @return session number of a player vs computer game
+     */
+    private synchronized int hostDecided(Connection connection, boolean pvp)
+    {
+        int session = 0;
+        if (host == connection && !pvp)
+        {
+            host = null;
+            session = sessionNum++;
+        }
+        match();
+        return session;
+    }
+
+    /**
+     * Starts a player vs player game on the host's reactor thread
+     *
+     * @param player1 host, already greeted
+     * @param player2 next connection, not greeted yet
+     * @param session session number for the log
+     */
+    private void startPlayerGame(Connection player1, Connection player2, int session)
+    {
+        if (player1.closed)
+        {
+            //the host left while waiting, so the opponent is first in line for the next session
+            synchronized (this)
+            {
+                waiting.addFirst(player2);
+                match();
+            }
+            return;
+        }
+        if (!player2.register(player1.reactor))
+        {
+            player1.closeAfterSend();
+            return;
+        }
+        log.accept("Player 2 joined session " + session + " from " + player2.address());
+        player2.writeInt(PLAYER2); //Send player number to player2
+        player2.writeBoolean(player1.textGame); //Let player2 know what type of UI the game is
+        player1.writeInt(PLAYER1);
+        Game game = new Game(player1, player2, null, false);
+        log.accept("Start session " + session);
+        player2.send();
+        player1.send();
+        game.startTurn();
+    }
+
+    /**
+     * Starts a player vs computer game on the player's reactor thread
+     *
+     * @param player1 the player, who has been told their difficulty
+     * @param difficulty difficulty the computer plays at
+     * @param session session number for the log
+     */
+    private void startComputerGame(Connection player1, Connect4Difficulty difficulty, int session)
+    {
+        Game game = new Game(player1, null, difficulty, pondering && difficulty.ponders());
+        log.accept("Start session " + session + " at difficulty " + difficulty);
+        log.accept(String.format("Computer workers busy %d/%d, queue depth %d, average wait %.1f ms, max wait %.1f ms",
+                computerPool.getActiveWorkers(), computerPool.getWorkers(), computerPool.getQueueDepth(),
+                computerPool.getAverageWaitMillis(), computerPool.getMaxWaitMillis()));
+        game.startTurn();
+    }
+
+    /**
+     * One reactor thread and the connections registered with its selector. Other threads hand it work through
+     * execute(), which wakes the selector up.
+     */
+    private class Reactor implements Runnable
+    {
+        private final int id;
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<Runnable> tasks;
+        private volatile boolean stopped;
+
+        /**
+         * Open the reactor's selector
+         *
+         * @param id number of the reactor, used in its thread name
+         * @throws IOException if the selector cannot be opened
+         */
+        Reactor(int id) throws IOException
+        {
+            this.id = id;
+            selector = Selector.open();
+            tasks = new ConcurrentLinkedQueue<>();
+        }
+
+        /**
+         * Run a task on the reactor thread. If the task fails, the connection it was for is closed and the reactor
+         * carries on with its other connections.
+         *
+         * @param connection connection the task is for
+         * @param task work touching this reactor's connections
+         */
+        void execute(Connection connection, Runnable task)
+        {
+            tasks.add(() -> {
+                try
+                {
+                    task.run();
+                } catch (RuntimeException e)
+                {
+                    failed(connection, e);
+                }
+            });
+            selector.wakeup();
+        }
+
+        /**
+         * Stop the reactor and close its connections
+         */
+        void stop()
+        {
+            stopped = true;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                while (!stopped)
+                {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null)
+                    {
+                        task.run();
+                    }
+                    for (SelectionKey key : selector.selectedKeys())
+                    {
+                        try
+                        {
+                            handle(key);
+                        } catch (RuntimeException e)
+                        {
+                            failed(key.attachment() instanceof Connection ? (Connection) key.attachment() : null, e);
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException e)
+            {
+                e.printStackTrace();
+            } finally
+            {
+                for (SelectionKey key : selector.keys())
+                {
+                    if (key.attachment() instanceof Connection)
+                    {
+                        ((Connection) key.attachment()).close();
+                    }
+                }
+                try
+                {
+                    selector.close();
+                } catch (IOException e)
+                {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        /**
+         * Logs an unexpected failure while handling a connection and closes that connection, which also ends its
+         * game and disconnects the opponent
+         *
+         * @param connection connection being handled, or null if the failure was in accepting players
+         * @param e the failure
+         */
+        private void failed(Connection connection, RuntimeException e)
+        {
+            log.accept("Closing " + (connection == null ? "no connection" : "the connection from "
+                    + connection.address()) + " after an error: " + e);
+            e.printStackTrace();
+            if (connection != null)
+            {
+                connection.close();
+            }
+        }
+
+        /**
+         * Accepts new players, or reads from and writes to a connection that is ready
+         *
+         * @param key key that is ready
+         */
+        private void handle(SelectionKey key)
+        {
+            if (!key.isValid())
+            {
+                return;
+            }
+            if (key.isAcceptable())
+            {
+                accept();
+                return;
+            }
+            Connection connection = (Connection) key.attachment();
+            if (key.isReadable())
+            {
+                connection.read();
+            }
+            if (key.isValid() && key.isWritable())
+            {
+                connection.flush();
+            }
+        }
+
+        /**
+         * Accepts every player waiting to connect and puts them in line
+         */
+        private void accept()
+        {
+            try
+            {
+                SocketChannel channel;
+                while ((channel = serverChannel.accept()) != null)
+                {
+                    channel.configureBlocking(false);
+                    connections.incrementAndGet();
+                    arrived(new Connection(channel));
+                }
+            } catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * One player's connection and where they are in the protocol. Everything but the constructor runs on the
+     * reactor the connection is registered with.
+     */
+    private class Connection
+    {
+        private static final int NOT_GREETED = 0;
+        private static final int READ_UI = 1; //waiting for text game or GUI
+        private static final int READ_GAME_TYPE = 2; //waiting for player vs player or player vs computer
+        private static final int READ_DIFFICULTY = 3; //waiting for the difficulty to play the computer at
+        private static final int WAITING_FOR_OPPONENT = 4;
+        private static final int PLAYING = 5;
+
+        private final SocketChannel channel;
+        private final ByteBuffer in;
+        private ByteBuffer out;
+        private Reactor reactor;
+        private SelectionKey key;
+        private volatile int state;
+        private boolean textGame;
+        private Game game;
+        private boolean closing;
+        private volatile boolean closed;
+
+        /**
+         * Wrap a channel that was just accepted
+         *
+         * @param channel channel in non-blocking mode
+         */
+        Connection(SocketChannel channel)
+        {
+            this.channel = channel;
+            in = ByteBuffer.allocate(IN_BYTES);
+            out = ByteBuffer.allocate(OUT_BYTES);
+            state = NOT_GREETED;
+        }
+
+        /**
+         * Get the address of the player for the log
+         *
+         * @return IP address, or a placeholder if the player already left
+         */
+        String address()
+        {
+            try
+            {
+                SocketAddress remote = channel.getRemoteAddress();
+                if (remote != null)
+                {
+                    return ((InetSocketAddress) remote).getAddress().getHostAddress();
+                }
+            } catch (IOException e)
+            {
+                //closed
+            }
+            return "an unknown address";
+        }
+
+        /**
+         * Register the connection with a reactor's selector, on that reactor's thread
+         *
+         * @param reactor reactor that handles the connection from now on
+         * @return true if registered, false if the player already left
+         */
+        boolean register(Reactor reactor)
+        {
+            this.reactor = reactor;
+            try
+            {
+                key = channel.register(reactor.selector, SelectionKey.OP_READ, this);
+                return true;
+            } catch (IOException e)
+            {
+                close();
+                return false;
+            }
+        }
+
+        /**
+         * Greet the connection as player 1 and wait for their choice of UI
+         *
+         * @param reactor reactor that handles the connection from now on
+         * @param session session number for the log
+         */
+        void greet(Reactor reactor, int session)
+        {
+            if (!register(reactor))
+            {
+                return;
+            }
+            log.accept("Player 1 joined session " + session + " from " + address());
+            state = READ_UI;
+            writeInt(PLAYER1);
+            send();
+        }
+
+        /**
+         * Reads whatever the player has sent and acts on it
+         */
+        void read()
+        {
+            try
+            {
+                if (channel.read(in) < 0)
+                {
+                    close();
+                    return;
+                }
+            } catch (IOException e)
+            {
+                close();
+                return;
+            }
+            process();
+        }
+
+        /**
+         * Acts on every complete message in the read buffer that the player is allowed to send right now. A move
+         * sent before the player's turn stays in the buffer until their turn comes.
+         */
+        void process()
+        {
+            if (closed)
+            {
+                return;
+            }
+            in.flip();
+            try
+            {
+                while (!closed && step())
+                {
+                    //keep going while whole messages are waiting
+                }
+            } finally
+            {
+                in.compact();
+            }
+            updateInterest();
+        }
+
+        /**
+         * Handles one message if a whole one is waiting
+         *
+         * @return true if a message was handled
+         */
+        private boolean step()
+        {
+            switch (state)
+            {
+                case READ_UI:
+                    if (!in.hasRemaining())
+                    {
+                        return false;
+                    }
+                    textGame = in.get() != 0; //Get the UI type from player1: Text Game or GUI game
+                    state = READ_GAME_TYPE;
+                    return true;
+                case READ_GAME_TYPE:
+                    if (!in.hasRemaining())
+                    {
+                        return false;
+                    }
+                    boolean pvp = in.get() != 0; //Get the game type from player1: player vs player or player vs computer
+                    state = pvp ? WAITING_FOR_OPPONENT : READ_DIFFICULTY;
+                    if (pvp)
+                    {
+                        hostDecided(this, true);
+                    }
+                    return true;
+                case READ_DIFFICULTY:
+                    if (in.remaining() < Integer.BYTES)
+                    {
+                        return false;
+                    }
+                    //the player asks for a difficulty and is told the level they got
+                    Connect4Difficulty difficulty = Connect4Difficulty.negotiate(in.getInt(), maxDifficulty);
+                    writeInt(difficulty.getLevel());
+                    send();
+                    state = PLAYING;
+                    startComputerGame(this, difficulty, hostDecided(this, false));
+                    return true;
+                case PLAYING:
+                    if (in.remaining() < Integer.BYTES || !game.isTurn(this))
+                    {
+                        return false;
+                    }
+                    game.move(this, in.getInt()); //Get column selection from player
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * Add an int to the write buffer
+         *
+         * @param value value to write
+         */
+        void writeInt(int value)
+        {
+            ensureRoom(Integer.BYTES);
+            out.putInt(value);
+        }
+
+        /**
+         * Add a boolean to the write buffer, as one byte like DataOutputStream
+         *
+         * @param value value to write
+         */
+        void writeBoolean(boolean value)
+        {
+            ensureRoom(1);
+            out.put((byte) (value ? 1 : 0));
+        }
+
+        /**
+         * Grows the write buffer if a message does not fit
+         *
+         * @param bytes size of the message
+         */
+        private void ensureRoom(int bytes)
+        {
+            if (out.remaining() < bytes)
+            {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+                out.flip();
+                bigger.put(out);
+                out = bigger;
+            }
+        }
+
+        /**
+         * Write as much of the write buffer as the socket takes now and wait for the socket to be writable
+         * for the rest
+         */
+        void send()
+        {
+            flush();
+        }
+
+        /**
+         * Writes buffered bytes to the socket
+         */
+        void flush()
+        {
+            if (closed)
+            {
+                return;
+            }
+            out.flip();
+            try
+            {
+                channel.write(out);
+            } catch (IOException e)
+            {
+                close();
+                return;
+            } finally
+            {
+                out.compact();
+            }
+            if (closing && out.position() == 0)
+            {
+                close();
+                return;
+            }
+            updateInterest();
+        }
+
+        /**
+         * Waits for reads while there is room in the read buffer and for writes while bytes are waiting to go out
+         */
+        private void updateInterest()
+        {
+            if (closed || key == null || !key.isValid())
+            {
+                return;
+            }
+            int ops = 0;
+            if (!closing && in.hasRemaining())
+            {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (out.position() > 0)
+            {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+
+        /**
+         * Close the connection once everything written to it has been sent
+         */
+        void closeAfterSend()
+        {
+            closing = true;
+            flush();
+        }
+
+        /**
+         * Close the connection now. An opponent in the same game is disconnected too.
+         */
+        void close()
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            connections.decrementAndGet();
+            if (key != null)
+            {
+                key.cancel();
+            }
+            try
+            {
+                channel.close();
+            } catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+            if (game != null)
+            {
+                game.abandon(this);
+            } else
+            {
+                hostDecided(this, false); //a host leaving lets the next connection be greeted
+            }
+        }
+    }
+
+    /**
+     * One game between two connections, or between a connection and the computer. Runs on the reactor of its
+     * player 1.
+     */
+    private class Game
+    {
+        private final Connect4 game;
+        private final Connection player1;
+        private final Connection player2;
+        private final Connect4ComputerPlayer computer;
+        private final Connect4ComputerPool.Session computerSession;
+        private final boolean ponders;
+        private boolean over;
+
+        /**
+         * Set up a game
+         *
+         * @param player1 first player's connection
+         * @param player2 second player's connection, or null to play the computer
+         * @param difficulty difficulty of the computer, or null for a player vs player game
+         * @param ponders true if the computer thinks on the player's time
+         */
+        Game(Connection player1, Connection player2, Connect4Difficulty difficulty, boolean ponders)
+        {
+            game = new Connect4();
+            this.player1 = player1;
+            this.player2 = player2;
+            this.ponders = ponders;
+            if (player2 != null)
+            {
+                computer = null;
+                computerSession = null;
+                player2.game = this;
+                player2.state = Connection.PLAYING;
+            } else
+            {
+                //before player 1 joins the game, so a pool that is shut down leaves no half-made game to abandon
+                computer = computers.apply(difficulty);
+                computerSession = computerPool.openSession();
+            }
+            player1.game = this;
+            player1.state = Connection.PLAYING;
+        }
+
+        /**
+         * Checks if a connection's moves are the ones being waited for
+         *
+         * @param connection connection to check
+         * @return true if the game is on and it is that player's turn
+         */
+        boolean isTurn(Connection connection)
+        {
+            if (over)
+            {
+                return false;
+            }
+            return game.getCurPlayer() == PLAYER1 ? connection == player1 : connection == player2;
+        }
+
+        /**
+         * Starts a player's turn: the computer ponders if it may, and any move the player already sent is played
+         */
+        void startTurn()
+        {
+            Connection next = game.getCurPlayer() == PLAYER1 ? player1 : player2;
+            if (next == null)
+            {
+                return;
+            }
+            if (computer != null && ponders)
+            {
+                computer.ponder(game.getBoard(), game.getCurPlayer()); //think while player one does
+            }
+            //on the next pass of the reactor, so a connection is never processed from inside its own processing
+            next.reactor.execute(next, next::process);
+        }
+
+        /**
+         * Plays a player's move, tells them if it was valid and sends a valid move and the status to both players
+         *
+         * @param from connection the move came from
+         * @param column column selection, starting at 1
+         */
+        void move(Connection from, int column)
+        {
+            boolean validMove = game.play(column) != INVALIDMOVE; //attempt to place the piece in the selected column of the game
+            from.writeBoolean(validMove); //let player know if the piece was placed or if they need to pick a different column
+            if (!validMove)
+            {
+                from.send();
+                return;
+            }
+            sendMove(from == player1);
+            if (game.isGameOver())
+            {
+                end();
+            } else if (computer != null)
+            {
+                computerSession.submit(() -> {
+                    try
+                    {
+                        int col = computer.chooseCol(game);
+                        player1.reactor.execute(player1, () -> computerMoved(col));
+                        return col;
+                    } catch (RuntimeException e)
+                    {
+                        //nobody reads the future, so end the game instead of leaving the player waiting
+                        player1.reactor.execute(player1, () -> computerFailed(e));
+                        throw e;
+                    }
+                });
+            } else
+            {
+                startTurn();
+            }
+        }
+
+        /**
+         * Plays the computer's move once a pool worker has chosen it
+         *
+         * @param column column selection, starting at 1
+         */
+        private void computerMoved(int column)
+        {
+            if (over)
+            {
+                return;
+            }
+            game.play(column);
+            sendMove(false);
+            if (game.isGameOver())
+            {
+                end();
+            } else
+            {
+                startTurn();
+            }
+        }
+
+        /**
+         * Ends the game when the computer could not choose a move
+         *
+         * @param e the failure
+         */
+        private void computerFailed(RuntimeException e)
+        {
+            if (over)
+            {
+                return;
+            }
+            log.accept("Computer failed to move against " + player1.address() + ": " + e);
+            e.printStackTrace();
+            end();
+        }
+
+        /**
+         * Sends the last piece placed and the game status to every player in the game
+         *
+         * @param player1Piece true if player one placed the piece
+         */
+        private void sendMove(boolean player1Piece)
+        {
+            send(player1, player1Piece);
+            if (player2 != null)
+            {
+                send(player2, !player1Piece);
+            }
+        }
+
+        /**
+         * Sends the last piece placed and the game status to one player
+         *
+         * @param to player to send to
+         * @param myPiece true if the piece is the player's own
+         */
+        private void send(Connection to, boolean myPiece)
+        {
+            to.writeInt(game.getColDrop());
+            to.writeInt(game.getRowDrop());
+            to.writeBoolean(myPiece);
+            to.writeInt(game.getStatus());
+            to.send();
+        }
+
+        /**
+         * Ends a finished game and closes the connections once the result has been sent
+         */
+        private void end()
+        {
+            finish();
+            player1.closeAfterSend();
+            if (player2 != null)
+            {
+                player2.closeAfterSend();
+            }
+        }
+
+        /**
+         * Ends the game when a player disconnects and disconnects the other player
+         *
+         * @param from connection that closed
+         */
+        void abandon(Connection from)
+        {
+            if (over)
+            {
+                return;
+            }
+            finish();
+            Connection other = from == player1 ? player2 : player1;
+            if (other != null)
+            {
+                other.close();
+            }
+        }
+
+        /**
+         * Marks the game over and frees the computer player. The computer is shut down from its session's queue,
+         * so it happens after any move it is still computing, or right away if the pool is already shut down.
+         */
+        private void finish()
+        {
+            over = true;
+            if (computer != null)
+            {
+                try
+                {
+                    computerSession.submit(() -> {
+                        computer.shutdown();
+                        return null;
+                    });
+                } catch (IllegalStateException e)
+                {
+                    computer.shutdown();
+                }
+            }
+        }
+    }
+}
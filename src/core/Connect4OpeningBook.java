@@ -0,0 +1,193 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only opening book of best moves. The book file is memory-mapped and searched with a binary search, so a
+ * lookup does not read the file into the heap or allocate anything. One book can be shared by every thread.
+ *
+ * The file starts with a header of five ints: MAGIC, VERSION, the deepest ply in the book, the number of
+ * entries and flags. The SOLVED flag marks a book whose scores and moves came from Connect4Solver instead of a
+ * depth-limited search. Version 1 books have no flags int and are read as not solved. Each entry is the canonical
+ * key of a position followed by an int holding the score shifted left by four bits and the best column in the low
+ * four bits. Entries are sorted by key. Moves are stored for the orientation whose hash is the canonical key and
+ * are mirrored on lookup when needed.
+ *
+ * @author Chris Burdett
+ * @version 1.0
+ */
+public class Connect4OpeningBook
+{
+    public static final int MAGIC = 0x43344248; // "C4BH"
+    public static final int VERSION = 2;
+    public static final int HEADER_BYTES = 20;
+    public static final int SOLVED = 1; // Flag for a book of exact scores
+    public static final int ENTRY_BYTES = 12;
+    public static final int NOT_FOUND = -1;
+
+    private final ByteBuffer buffer;
+    private final int headerBytes;
+    private final int maxPly;
+    private final int size;
+    private final int flags;
+
+    /**
+     * Create a book from a buffer laid out like a book file
+     *
+     * @param buffer contents of a book file
+     * @throws IOException if the buffer is not a book
+     */
+    public Connect4OpeningBook(ByteBuffer buffer) throws IOException
+    {
+        int version = buffer.getInt(4);
+        if (buffer.getInt(0) != MAGIC || version < 1 || version > VERSION)
+        {
+            throw new IOException("Not a Connect4 opening book");
+        }
+        this.buffer = buffer;
+        headerBytes = version == 1 ? 16 : HEADER_BYTES;
+        maxPly = buffer.getInt(8);
+        size = buffer.getInt(12);
+        flags = version == 1 ? 0 : buffer.getInt(16);
+        if (buffer.capacity() < headerBytes + (long) size * ENTRY_BYTES)
+        {
+            throw new IOException("Opening book is truncated");
+        }
+    }
+
+    /**
+     * Map a book file into memory
+     *
+     * @param path location of the book file
+     * @return the opening book
+     * @throws IOException if the file cannot be read or is not a book
+     */
+    public static Connect4OpeningBook open(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Connect4OpeningBook(mapped);
+        }
+    }
+
+    /**
+     * Get the deepest ply the book covers
+     *
+     * @return number of pieces on the board in the deepest positions of the book
+     */
+    public int getMaxPly()
+    {
+        return maxPly;
+    }
+
+    /**
+     * Checks if the book was built by solving every position, so its moves are perfect play
+     *
+     * @return true if the scores are exact, false if they came from a depth-limited search
+     */
+    public boolean isSolved()
+    {
+        return (flags & SOLVED) != 0;
+    }
+
+    /**
+     * Get the number of positions in the book
+     *
+     * @return number of entries
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Find the entry for a position
+     *
+     * @param canonicalKey canonical key of the position
+     * @return the packed score and move, or NOT_FOUND
+     */
+    public int lookup(long canonicalKey)
+    {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int offset = headerBytes + mid * ENTRY_BYTES;
+            long key = buffer.getLong(offset);
+            if (key < canonicalKey)
+            {
+                low = mid + 1;
+            } else if (key > canonicalKey)
+            {
+                high = mid - 1;
+            } else
+            {
+                return buffer.getInt(offset + Long.BYTES);
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Get the best column for the player to move on a board
+     *
+     * @param board board to look up
+     * @return best column, starting at 0, or NOT_FOUND if the position is not in the book or the board is not the
+     * standard one
+     */
+    public int bestMove(Connect4BitBoard board)
+    {
+        if (board.getMoveCount() > maxPly || !board.getGeometry().isStandard())
+        {
+            return NOT_FOUND;
+        }
+        int entry = lookup(board.getCanonicalKey());
+        if (entry == NOT_FOUND)
+        {
+            return NOT_FOUND;
+        }
+        int col = move(entry);
+        return board.getHash() == board.getCanonicalKey() ? col : Connect4BitBoard.WIDTH - 1 - col;
+    }
+
+    /**
+     * Packs a score and a move into a book entry
+     *
+     * @param score score of the position for the player to move
+     * @param col best column in the canonical orientation, starting at 0
+     * @return packed entry
+     */
+    public static int pack(int score, int col)
+    {
+        return (score << 4) | col;
+    }
+
+    /**
+     * Get the score of a book entry
+     *
+     * @param entry entry returned by lookup
+     * @return score of the position for the player to move
+     */
+    public static int score(int entry)
+    {
+        return entry >> 4;
+    }
+
+    /**
+     * Get the move of a book entry
+     *
+     * @param entry entry returned by lookup
+     * @return best column in the canonical orientation, starting at 0
+     */
+    public static int move(int entry)
+    {
+        return entry & 0xF;
+    }
+}
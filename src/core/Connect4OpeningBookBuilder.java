@@ -0,0 +1,168 @@
+package core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tool that builds an opening book by searching every position reachable within a number of plies.
+ * Mirror images are only searched once since they share a canonical key. With a search depth of SOLVE every
+ * position is solved exactly instead, which takes far longer but gives a book that perfect play can use.
+ *
+ * Usage: java core.Connect4OpeningBookBuilder output-file [plies] [search depth | solve]
+ *
+ * @author Chris Burdett
+ * @version 1.0
+ */
+public class Connect4OpeningBookBuilder implements Connect4Constants
+{
+    public static final int DEFAULT_PLIES = 8;
+    public static final int DEFAULT_SEARCH_DEPTH = 12;
+    public static final int SOLVE = 0; // Search depth that solves every position
+    public static final long SEARCH_TABLE_BYTES = 256L * 1024 * 1024;
+    public static final long SOLVER_TABLE_BYTES = 256L * 1024 * 1024;
+
+    private final int maxPly;
+    private final boolean solved;
+    private final Connect4ComputerPlayer computer;
+    private final Map<Long, Integer> entries;
+
+    /**
+     * Create a builder for a book
+     *
+     * @param maxPly deepest ply to include in the book
+     * @param searchDepth number of moves to search ahead from each position, or SOLVE to solve each position
+     */
+    public Connect4OpeningBookBuilder(int maxPly, int searchDepth)
+    {
+        this.maxPly = maxPly;
+        solved = searchDepth == SOLVE;
+        //the solver keeps its own table and the book is only for the standard board, so solving never uses
+        //the search table and it gets a single bucket
+        computer = new Connect4ComputerPlayer(solved ? Connect4ComputerPlayer.MAX_DEPTH : searchDepth,
+                new Connect4TranspositionTable(solved ? 0 : SEARCH_TABLE_BYTES));
+        if (solved)
+        {
+            computer.setPerfectPlay(new Connect4Solver(SOLVER_TABLE_BYTES));
+        }
+        entries = new HashMap<>();
+    }
+
+    /**
+     * Search every position from the empty board up to the deepest ply
+     */
+    public void build()
+    {
+        visit(new Connect4BitBoard(), PLAYER1);
+    }
+
+    /**
+     * Searches a position and every position after it that has not been seen yet
+     *
+     * @param board board to search, restored before returning
+     * @param player player about to move
+     */
+    private void visit(Connect4BitBoard board, int player)
+    {
+        long key = board.getCanonicalKey();
+        if (board.getMoveCount() > maxPly || entries.containsKey(key))
+        {
+            return;
+        }
+
+        int col = computer.chooseCol(board, player) - 1;
+        if (col < 0)
+        {
+            return;
+        }
+        if (board.getHash() != key)
+        {
+            col = Connect4BitBoard.WIDTH - 1 - col; //store the move for the canonical orientation
+        }
+        entries.put(key, Connect4OpeningBook.pack(computer.getLastScore(), col));
+
+        int next = player == PLAYER1 ? PLAYER2 : PLAYER1;
+        for (int move = 0; move < Connect4BitBoard.WIDTH; move++)
+        {
+            if (board.canPlay(move) && !board.isWinningMove(move, player))
+            {
+                board.drop(move, player);
+                visit(board, next);
+                board.undrop(move);
+            }
+        }
+    }
+
+    /**
+     * Write the book sorted by key
+     *
+     * @param out stream to write the book to
+     * @throws IOException if the book cannot be written
+     */
+    public void write(OutputStream out) throws IOException
+    {
+        long[] keys = new long[entries.size()];
+        int i = 0;
+        for (long key : entries.keySet())
+        {
+            keys[i++] = key;
+        }
+        Arrays.sort(keys);
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(Connect4OpeningBook.MAGIC);
+        data.writeInt(Connect4OpeningBook.VERSION);
+        data.writeInt(maxPly);
+        data.writeInt(keys.length);
+        data.writeInt(solved ? Connect4OpeningBook.SOLVED : 0);
+        for (long key : keys)
+        {
+            data.writeLong(key);
+            data.writeInt(entries.get(key));
+        }
+        data.flush();
+    }
+
+    /**
+     * Get the number of positions found so far
+     *
+     * @return number of book entries
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1)
+        {
+            System.out.println("Usage: java core.Connect4OpeningBookBuilder output-file [plies] [search depth | solve]");
+            return;
+        }
+        Path path = Paths.get(args[0]);
+        int plies = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PLIES;
+        int depth = DEFAULT_SEARCH_DEPTH;
+        if (args.length > 2)
+        {
+            depth = args[2].equals("solve") ? SOLVE : Integer.parseInt(args[2]);
+        }
+
+        long start = System.currentTimeMillis();
+        Connect4OpeningBookBuilder builder = new Connect4OpeningBookBuilder(plies, depth);
+        builder.build();
+        try (OutputStream out = Files.newOutputStream(path))
+        {
+            builder.write(out);
+        }
+        System.out.println("Wrote " + builder.size() + " positions to " + path + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+}
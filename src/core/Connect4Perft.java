@@ -0,0 +1,317 @@
+package core;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts every legal sequence of moves to a fixed depth from a position, the same check chess engines call perft.
+ * A game that is won before the depth is reached ends there and adds nothing to the deeper counts, so the numbers
+ * only come out right if moves, wins and undos are all correct. Comparing them with known counts is a quick way to
+ * check a change to the board code, and the counting speed is a simple measure of how fast the engine runs.
+ *
+ * The count can use a table of positions already counted, keyed by the position's canonical key since a position
+ * and its mirror image have the same count, and it can split the top of the tree across a fork-join pool. The table
+ * is lock-free in the same way as Connect4TranspositionTable, so the threads share it.
+ *
+ * @author Chris Burdett
+ * @version 1.0
+ */
+public class Connect4Perft implements Connect4Constants
+{
+    //moves near the root that are counted as separate fork-join tasks
+    public static final int SPLIT_PLIES = 3;
+
+    private final long[] slots;
+    private final long slotMask;
+    private long nanos;
+
+    /**
+     * Create a counter that does not remember positions
+     */
+    public Connect4Perft()
+    {
+        this(0);
+    }
+
+    /**
+     * Create a counter that remembers positions it has counted in a table of about a given size
+     *
+     * @param tableBytes memory for the table in bytes, 0 to count every position from scratch
+     */
+    public Connect4Perft(long tableBytes)
+    {
+        long count = tableBytes / (2 * Long.BYTES);
+        if (count > 0)
+        {
+            count = Math.min(Long.highestOneBit(count), 1L << 28);
+            slots = new long[(int) count * 2];
+            slotMask = count - 1;
+        } else
+        {
+            slots = null;
+            slotMask = 0;
+        }
+    }
+
+    /**
+     * Count the move sequences from a game's current position
+     *
+     * @param game game to count from, not changed
+     * @param depth number of moves in each sequence
+     * @return number of sequences, 0 if the game is already over
+     */
+    public long perft(Connect4 game, int depth)
+    {
+        if (game.isGameOver())
+        {
+            return depth == 0 ? 1 : 0;
+        }
+        return perft(game.getBoard(), game.getCurPlayer(), depth);
+    }
+
+    /**
+     * Count the move sequences from a position on the calling thread
+     *
+     * @param board board to count from, not changed
+     * @param player player about to move
+     * @param depth number of moves in each sequence
+     * @return number of sequences
+     */
+    public long perft(Connect4BitBoard board, int player, int depth)
+    {
+        long start = System.nanoTime();
+        long total = count(new Connect4BitBoard(board), player, depth);
+        nanos = System.nanoTime() - start;
+        return total;
+    }
+
+    /**
+     * Count the move sequences from a position, counting the first SPLIT_PLIES moves as separate tasks
+     * on a fork-join pool
+     *
+     * @param board board to count from, not changed
+     * @param player player about to move
+     * @param depth number of moves in each sequence
+     * @param pool pool to run the tasks on
+     * @return number of sequences
+     */
+    public long parallelPerft(Connect4BitBoard board, int player, int depth, ForkJoinPool pool)
+    {
+        long start = System.nanoTime();
+        long total = pool.invoke(new Split(new Connect4BitBoard(board), player, depth, SPLIT_PLIES));
+        nanos = System.nanoTime() - start;
+        return total;
+    }
+
+    /**
+     * Get how long the last count took
+     *
+     * @return nanoseconds spent on the last count
+     */
+    public long getNanos()
+    {
+        return nanos;
+    }
+
+    /**
+     * Get how fast a count went
+     *
+     * @param nodes result of the count
+     * @return sequences counted per second
+     */
+    public long getNodesPerSecond(long nodes)
+    {
+        return nanos > 0 ? (long) (nodes * 1e9 / nanos) : 0;
+    }
+
+    /**
+     * Counts the move sequences below a position. Every legal move at the last ply is counted without being
+     * played, and a winning move before the last ply ends its game and is not counted.
+     *
+     * @param board board to count from, restored before returning
+     * @param player player about to move
+     * @param depth number of moves left in each sequence
+     * @return number of sequences
+     */
+    private long count(Connect4BitBoard board, int player, int depth)
+    {
+        int legal = board.legalMovesMask();
+        if (depth <= 1)
+        {
+            return depth == 0 ? 1 : Integer.bitCount(legal);
+        }
+
+        long key = board.getCanonicalKey();
+        long found = probe(key, depth);
+        if (found >= 0)
+        {
+            return found;
+        }
+
+        long total = 0;
+        int other = player == PLAYER1 ? PLAYER2 : PLAYER1;
+        for (; legal != 0; legal &= legal - 1)
+        {
+            int col = Integer.numberOfTrailingZeros(legal);
+            if (board.isWinningMove(col, player))
+            {
+                continue;
+            }
+            board.drop(col, player);
+            total += count(board, other, depth - 1);
+            board.undrop(col);
+        }
+        store(key, depth, total);
+        return total;
+    }
+
+    /**
+     * Look up a count in the table
+     *
+     * @param key canonical key of the position
+     * @param depth number of moves the count is for
+     * @return the count, or -1 if it is not in the table
+     */
+    private long probe(long key, int depth)
+    {
+        if (slots == null)
+        {
+            return -1;
+        }
+        int index = (int) (key & slotMask) * 2;
+        long entry = slots[index + 1];
+        if ((slots[index] ^ entry) == key && (entry & 0xFF) == depth)
+        {
+            return entry >>> 8;
+        }
+        return -1;
+    }
+
+    /**
+     * Store a count in the table, replacing whatever was in its slot. Bits 0-7 of the entry hold the depth
+     * and the rest the count.
+     *
+     * @param key canonical key of the position
+     * @param depth number of moves the count is for
+     * @param count number of sequences
+     */
+    private void store(long key, int depth, long count)
+    {
+        if (slots == null)
+        {
+            return;
+        }
+        int index = (int) (key & slotMask) * 2;
+        long entry = (count << 8) | depth;
+        slots[index] = key ^ entry;
+        slots[index + 1] = entry;
+    }
+
+    /**
+     * Counts a position near the root by forking a task for each move, until SPLIT_PLIES moves have been made
+     */
+    private class Split extends RecursiveTask<Long>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Connect4BitBoard board;
+        private final int player;
+        private final int depth;
+        private final int splits;
+
+        /**
+         * Create a task for a position
+         *
+         * @param board copy of the board the task may change
+         * @param player player about to move
+         * @param depth number of moves left in each sequence
+         * @param splits number of plies left to split into tasks
+         */
+        Split(Connect4BitBoard board, int player, int depth, int splits)
+        {
+            this.board = board;
+            this.player = player;
+            this.depth = depth;
+            this.splits = splits;
+        }
+
+        @Override
+        protected Long compute()
+        {
+            if (splits == 0 || depth <= 2)
+            {
+                return count(board, player, depth);
+            }
+            int other = player == PLAYER1 ? PLAYER2 : PLAYER1;
+            Split[] tasks = new Split[board.getGeometry().getWidth()];
+            int forked = 0;
+            for (int legal = board.legalMovesMask(); legal != 0; legal &= legal - 1)
+            {
+                int col = Integer.numberOfTrailingZeros(legal);
+                if (board.isWinningMove(col, player))
+                {
+                    continue;
+                }
+                Connect4BitBoard child = new Connect4BitBoard(board);
+                child.drop(col, player);
+                tasks[forked] = new Split(child, other, depth - 1, splits - 1);
+                tasks[forked++].fork();
+            }
+            long total = 0;
+            for (int i = forked - 1; i >= 0; i--)
+            {
+                total += tasks[i].join();
+            }
+            return total;
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        if (args.length < 1)
+        {
+            System.out.println("Usage: java core.Connect4Perft depth [moves, such as 4453, or -] [threads] [table MB]");
+            return;
+        }
+        int depth = Integer.parseInt(args[0]);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        long tableBytes = args.length > 3 ? Long.parseLong(args[3]) * 1024 * 1024 : 0;
+
+        Connect4 game = new Connect4();
+        if (args.length > 1 && !args[1].equals("-"))
+        {
+            for (char move : args[1].toCharArray())
+            {
+                if (game.isGameOver() || game.play(move - '0') == INVALIDMOVE)
+                {
+                    System.out.println("Cannot play " + move + " in " + args[1]);
+                    return;
+                }
+            }
+        }
+
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        for (int d = 1; d <= depth; d++)
+        {
+            //a fresh table each depth so the times are not helped by the previous count
+            Connect4Perft perft = new Connect4Perft(tableBytes);
+            long nodes;
+            if (game.isGameOver())
+            {
+                nodes = 0;
+            } else if (pool != null)
+            {
+                nodes = perft.parallelPerft(game.getBoard(), game.getCurPlayer(), d, pool);
+            } else
+            {
+                nodes = perft.perft(game.getBoard(), game.getCurPlayer(), d);
+            }
+            System.out.println("perft " + d + ": " + nodes + " in " + perft.getNanos() / 1000000 + " ms, "
+                    + perft.getNodesPerSecond(nodes) + " nodes/s");
+        }
+        if (pool != null)
+        {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package core;
+
+/**
+ * A computer opponent that picks the column to drop its next piece into
+ *
+ * @author Chris Burdett
+ * @version 1.0
+ */
+public interface Connect4Player
+{
+    /**
+     * Choose a column for a player
+     *
+     * @param board board to choose a move for
+     * @param player PLAYER1 or PLAYER2
+     * @return column selection, starting at 1, or 0 if the board is full
+     */
+    int chooseCol(Connect4BitBoard board, int player);
+
+    /**
+     * Choose a column for the player whose turn it is in a game
+     *
+     * @param game game to choose a move for
+     * @return column selection, starting at 1
+     */
+    default int chooseCol(Connect4 game)
+    {
+        return chooseCol(game.getBoard(), game.getCurPlayer());
+    }
+}
@@ -0,0 +1,256 @@
+package core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Immutable snapshot of a Connect4 position: each player's pieces as a bitboard and the number of pieces played.
+ * A position is two longs and an int, so a game can hand one out in constant time, and it never changes afterwards,
+ * so it can be shared between threads and used as a hash map key without copying.
+ *
+ * The bitboards use the Connect4BitBoard layout, so positions only exist for boards that fit in one long. A
+ * position is written as the first player's pieces followed by the second player's, BYTES bytes in total; the
+ * number of pieces is recounted when it is read back.
+ *
+ * @author Chris Burdett
+ * @version 1.0
+ */
+public final class Connect4Position implements Connect4Constants
+{
+    public static final int BYTES = 2 * Long.BYTES;
+
+    private final Connect4Geometry geometry;
+    private final long player1Stones;
+    private final long player2Stones;
+    private final int ply;
+
+    /**
+     * Create a position from each player's pieces. The pieces are not checked; use read() for pieces that
+     * come from outside the program.
+     *
+     * @param geometry size of the board, which must fit in one long
+     * @param player1Stones pieces of the first player
+     * @param player2Stones pieces of the second player
+     * @param ply number of pieces on the board
+     */
+    Connect4Position(Connect4Geometry geometry, long player1Stones, long player2Stones, int ply)
+    {
+        this.geometry = geometry;
+        this.player1Stones = player1Stones;
+        this.player2Stones = player2Stones;
+        this.ply = ply;
+    }
+
+    /**
+     * Take a snapshot of a board
+     *
+     * @param board board to copy the pieces of
+     * @return position of the board
+     * @throws IllegalArgumentException if the board does not fit in one long
+     */
+    public static Connect4Position of(Connect4BitBoard board)
+    {
+        if (!board.fitsInLong())
+        {
+            throw new IllegalArgumentException("a " + board.getGeometry() + " board does not fit in a position");
+        }
+        return new Connect4Position(board.getGeometry(), board.getStones(PLAYER1), board.getStones(PLAYER2),
+                board.getMoveCount());
+    }
+
+    /**
+     * Read a standard board position written by write()
+     *
+     * @param buffer buffer holding at least BYTES bytes, advanced past the position
+     * @return position read
+     * @throws IllegalArgumentException if the bytes do not describe a position that can be reached in a game
+     */
+    public static Connect4Position read(ByteBuffer buffer)
+    {
+        return read(buffer, Connect4Geometry.STANDARD);
+    }
+
+    /**
+     * Read a position written by write()
+     *
+     * @param buffer buffer holding at least BYTES bytes, advanced past the position
+     * @param geometry size of the board the position was written for
+     * @return position read
+     * @throws IllegalArgumentException if the bytes do not describe a position that can be reached in a game
+     */
+    public static Connect4Position read(ByteBuffer buffer, Connect4Geometry geometry)
+    {
+        if (!geometry.fitsInLong())
+        {
+            throw new IllegalArgumentException("a " + geometry + " board does not fit in a position");
+        }
+        long player1 = buffer.getLong();
+        long player2 = buffer.getLong();
+        long mask = player1 | player2;
+        int pieces1 = Long.bitCount(player1);
+        int pieces2 = Long.bitCount(player2);
+        if ((player1 & player2) != 0 || pieces1 - pieces2 < 0 || pieces1 - pieces2 > 1)
+        {
+            throw new IllegalArgumentException("not a position either player could have reached");
+        }
+
+        long column = (1L << geometry.getHeight()) - 1;
+        long playable = 0L;
+        for (int col = 0; col < geometry.getWidth(); col++)
+        {
+            long pieces = (mask >>> (col * geometry.getColumnBits())) & column;
+            if ((pieces & (pieces + 1)) != 0)
+            {
+                throw new IllegalArgumentException("column " + (col + 1) + " has a gap below a piece");
+            }
+            playable |= column << (col * geometry.getColumnBits());
+        }
+        if ((mask & ~playable) != 0)
+        {
+            throw new IllegalArgumentException("pieces outside the board");
+        }
+        return new Connect4Position(geometry, player1, player2, pieces1 + pieces2);
+    }
+
+    /**
+     * Write the position as the first player's pieces followed by the second player's
+     *
+     * @param buffer buffer with room for BYTES bytes, advanced past the position
+     */
+    public void write(ByteBuffer buffer)
+    {
+        buffer.putLong(player1Stones);
+        buffer.putLong(player2Stones);
+    }
+
+    /**
+     * Get the position as BYTES bytes
+     *
+     * @return bytes written by write()
+     */
+    public byte[] toBytes()
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(BYTES);
+        write(buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Get the size of the board the position is on
+     *
+     * @return geometry of the board
+     */
+    public Connect4Geometry getGeometry()
+    {
+        return geometry;
+    }
+
+    /**
+     * Get the pieces of a player
+     *
+     * @param player PLAYER1 or PLAYER2
+     * @return mask of the player's pieces
+     */
+    public long getStones(int player)
+    {
+        return player == PLAYER1 ? player1Stones : player2Stones;
+    }
+
+    /**
+     * Get every occupied cell
+     *
+     * @return mask of every piece on the board
+     */
+    public long getMask()
+    {
+        return player1Stones | player2Stones;
+    }
+
+    /**
+     * Get the number of pieces on the board
+     *
+     * @return number of moves played to reach the position
+     */
+    public int getPly()
+    {
+        return ply;
+    }
+
+    /**
+     * Get the player about to move
+     *
+     * @return PLAYER1 or PLAYER2
+     */
+    public int getCurPlayer()
+    {
+        return ply % 2 == 0 ? PLAYER1 : PLAYER2;
+    }
+
+    /**
+     * Get the piece in a cell, in the same form as Connect4.getMatrix()
+     *
+     * @param col column of the cell, 0 is the leftmost column
+     * @param row row of the cell, 0 is the bottom row
+     * @return PLAYER1TOKEN, PLAYER2TOKEN, or a space for an empty cell
+     */
+    public char getToken(int col, int row)
+    {
+        long cell = 1L << geometry.bitIndex(col, row);
+        if ((player1Stones & cell) != 0)
+        {
+            return PLAYER1TOKEN;
+        }
+        return (player2Stones & cell) != 0 ? PLAYER2TOKEN : ' ';
+    }
+
+    /**
+     * Create a board with the pieces of the position that can be played on or searched
+     *
+     * @return new board
+     */
+    public Connect4BitBoard toBoard()
+    {
+        Connect4BitBoard board = new Connect4BitBoard(geometry);
+        for (int col = 0; col < geometry.getWidth(); col++)
+        {
+            for (int row = 0; row < geometry.getHeight() && getToken(col, row) != ' '; row++)
+            {
+                board.drop(col, getToken(col, row) == PLAYER1TOKEN ? PLAYER1 : PLAYER2);
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Checks if another position has the same pieces on the same size of board
+     *
+     * @param other object to compare with
+     * @return true if both positions are the same
+     */
+    @Override
+    public boolean equals(Object other)
+    {
+        if (!(other instanceof Connect4Position))
+        {
+            return false;
+        }
+        Connect4Position position = (Connect4Position) other;
+        return player1Stones == position.player1Stones && player2Stones == position.player2Stones
+                && geometry.equals(position.geometry);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        //mix both boards so positions that differ by one piece land far apart
+        long h = player1Stones * 0x9E3779B97F4A7C15L + player2Stones;
+        h ^= h >>> 32;
+        return (int) h * 31 + geometry.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Connect4Position[" + geometry + ", ply " + ply + ", " + Long.toHexString(player1Stones) + "/"
+                + Long.toHexString(player2Stones) + "]";
+    }
+}
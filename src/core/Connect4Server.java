@@ -7,25 +7,54 @@ import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TextArea;
 import javafx.stage.Stage;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Paths;
 import java.util.Date;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 public class Connect4Server extends Application implements Connect4Constants
 {
+    //bytes buffered per socket stream; every message fits, and thousands of sessions do not need 8KB each
+    private static final int STREAM_BUFFER_BYTES = 64;
     sendData send = new sendData();
     private int sessionNum = 1;
     private boolean textGame;
     private boolean pvp;
+    private final long computerTimeBudget = Long.getLong("connect4.computerTimeMillis", Connect4ComputerPlayer.DEFAULT_TIME_BUDGET_MILLIS);
+    private final Connect4OpeningBook openingBook = loadOpeningBook();
+    //solving the opening takes minutes, so perfect play is only offered by default when a solved book covers it
+    private final Connect4Difficulty maxDifficulty = Connect4Difficulty.valueOf(System.getProperty("connect4.maxDifficulty",
+            openingBook != null && openingBook.isSolved() ? "PERFECT" : "EXPERT"));
+    //one solver table for every perfect-play session instead of one per session
+    private final Connect4Solver sharedSolver = maxDifficulty == Connect4Difficulty.PERFECT
+            ? new Connect4Solver(Long.getLong("connect4.solverTableBytes", Connect4Solver.DEFAULT_TABLE_BYTES)) : null;
+    private final boolean computerPonders = Boolean.parseBoolean(System.getProperty("connect4.ponder", "true"));
+    //every player vs computer session computes its moves on these workers
+    private final Connect4ComputerPool computerPool = new Connect4ComputerPool(
+            Integer.getInteger("connect4.computerWorkers", Runtime.getRuntime().availableProcessors()),
+            Integer.getInteger("connect4.ponderWorkers", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)));
+    //"threads" for a thread per session, "virtual" for a virtual thread per session, or "nio" to handle every
+    //connection on a few selector threads
+    private final String serverMode = System.getProperty("connect4.serverMode", "threads");
+    private final int reactors = Integer.getInteger("connect4.reactors", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
 
     /**
      * Initializes the server. Lets player1 join a session first. That player chooses if they want to play a text-based game or a game
      * with a GUI. Player one them chooses if they want to play against another player or against the computer. If they choose the play
      * against another player, the server waits for a second player to join before starting a new thread. If player one chooses to play
-     * against the computer, a new thread is created right away.
+     * against the computer, they also ask for a difficulty. The server sends back the level they will play at, which is never above the
+     * connect4.maxDifficulty system property, and a new thread is created right away. That property defaults to EXPERT, or to PERFECT
+     * when connect4.openingBook names a solved book. If the connect4.serverMode system property
+     * is virtual, the sessions run on virtual threads instead. If it is nio, the same protocol is served by a Connect4NioServer,
+     * without a thread per session.
      *
      * @param stage primary stage
      * @throws Exception
@@ -41,54 +70,168 @@ public class Connect4Server extends Application implements Connect4Constants
         stage.setScene(scene);
         stage.show();
 
-        new Thread(() -> {
+        Consumer<String> logger = message -> Platform.runLater(() -> log.appendText(new Date() + ": " + message + '\n'));
+        if (serverMode.equals("nio"))
+        {
+            createNioServer(8004, logger).start();
+            return;
+        }
+
+        Executor sessions = createSessionExecutor(serverMode, logger);
+        ServerSocket serverSocket = new ServerSocket(8004);
+        sessions.execute(() -> serve(serverSocket, sessions, logger));
+    }
+
+    /**
+     * Creates a Connect4NioServer set up from the server's system properties, sharing this server's computer pool
+     *
+     * @param port port to listen on, 0 for any free port
+     * @param log receives one line per event
+     * @return server that has not been started
+     * @throws IOException if a selector cannot be opened
+     */
+    Connect4NioServer createNioServer(int port, Consumer<String> log) throws IOException
+    {
+        Connect4NioServer server = new Connect4NioServer(port, reactors, computerPool, this::createComputer);
+        server.setMaxDifficulty(maxDifficulty);
+        server.setPondering(computerPonders);
+        server.setLog(log);
+        return server;
+    }
+
+    /**
+     * Creates the executor the accept loop and every session run on. In threads mode each task gets a new thread,
+     * and in virtual mode a new virtual thread, so a player blocked reading their next move holds no platform thread.
+     * Virtual threads are looked up at run time, so on a JDK without them the server logs that it falls back to
+     * threads mode.
+     *
+     * @param mode threads or virtual
+     * @param log receives a line if virtual mode falls back to threads mode
+     * @return executor starting one thread per task
+     */
+    static Executor createSessionExecutor(String mode, Consumer<String> log)
+    {
+        if (mode.equals("virtual"))
+        {
             try
             {
-                ServerSocket serverSocket = new ServerSocket(8004);
-                Platform.runLater(() -> log.appendText(new Date() + ": Server started at socket 8004\n"));
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | UnsupportedOperationException e)
+            {
+                log.accept("Virtual threads are not available on Java " + Runtime.version().feature()
+                        + ", falling back to a platform thread per session");
+            }
+        }
+        return runnable -> new Thread(runnable).start();
+    }
 
-                while (true)
-                {
-                    Platform.runLater(() -> log.appendText(new Date() + ": Wait for players to join session " + sessionNum + "\n"));
-                    Socket player1 = serverSocket.accept();
+    /**
+     * Accepts players and starts their sessions until the server socket is closed. Player one is greeted and asked
+     * for the UI and game type on this thread, so players are paired in the order they connect.
+     *
+     * @param serverSocket socket players connect to
+     * @param sessions executor each session runs on
+     * @param log receives one line per event
+     */
+    void serve(ServerSocket serverSocket, Executor sessions, Consumer<String> log)
+    {
+        try
+        {
+            log.accept("Server started at socket " + serverSocket.getLocalPort());
 
-                    Platform.runLater(() -> {
-                        log.appendText(new Date() + ": Player 1 joined session " + sessionNum + '\n');
-                        log.appendText("Player 1's IP address" + player1.getInetAddress().getHostAddress() + '\n');
-                    });
+            while (true)
+            {
+                log.accept("Wait for players to join session " + sessionNum);
+                Socket player1 = serverSocket.accept();
 
-                    DataInputStream fromPlayer1 = new DataInputStream(player1.getInputStream());
-                    DataOutputStream toPlayer1 = new DataOutputStream(player1.getOutputStream());
-                    toPlayer1.writeInt(PLAYER1);
+                log.accept("Player 1 joined session " + sessionNum);
+                log.accept("Player 1's IP address" + player1.getInetAddress().getHostAddress());
 
-                    textGame = fromPlayer1.readBoolean(); //Get the UI type from player1: Text Game or GUI game
-                    pvp = fromPlayer1.readBoolean(); //Get the game type from player1: player vs player or player vs computer
+                DataInputStream fromPlayer1 = new DataInputStream(player1.getInputStream());
+                DataOutputStream toPlayer1 = new DataOutputStream(new BufferedOutputStream(player1.getOutputStream(), STREAM_BUFFER_BYTES));
+                toPlayer1.writeInt(PLAYER1);
+                toPlayer1.flush();
 
-                    if (pvp)
-                    {
-                        Socket player2 = serverSocket.accept();
-                        Platform.runLater(() -> {
-                            log.appendText(new Date() + ": Player 2 joined session " + sessionNum + '\n');
-                            log.appendText("Player 2's IP address" + player2.getInetAddress().getHostAddress() + '\n');
-                        });
-                        DataInputStream fromPlayer2 = new DataInputStream(player2.getInputStream());
-                        DataOutputStream toPlayer2 = new DataOutputStream(player2.getOutputStream());
-                        toPlayer2.writeInt(PLAYER2); //Send player number to player2
-                        toPlayer2.writeBoolean(textGame); //Let player2 know what type of UI the game is
-
-                        Platform.runLater(() -> log.appendText(new Date() + ": Start a thread for session " + sessionNum++ + " \n"));
-                        new Thread(new HandleASessionPVP(player1, player2)).start();
-                    } else
-                    {
-                        Platform.runLater(() -> log.appendText(new Date() + ": Start a thread for session " + sessionNum++ + " \n"));
-                        new Thread(new HandleASessionPVC(player1)).start();
-                    }
+                textGame = fromPlayer1.readBoolean(); //Get the UI type from player1: Text Game or GUI game
+                pvp = fromPlayer1.readBoolean(); //Get the game type from player1: player vs player or player vs computer
+
+                if (pvp)
+                {
+                    Socket player2 = serverSocket.accept();
+                    log.accept("Player 2 joined session " + sessionNum);
+                    log.accept("Player 2's IP address" + player2.getInetAddress().getHostAddress());
+                    DataInputStream fromPlayer2 = new DataInputStream(player2.getInputStream());
+                    DataOutputStream toPlayer2 = new DataOutputStream(new BufferedOutputStream(player2.getOutputStream(), STREAM_BUFFER_BYTES));
+                    toPlayer2.writeInt(PLAYER2); //Send player number to player2
+                    toPlayer2.writeBoolean(textGame); //Let player2 know what type of UI the game is
+                    toPlayer2.flush();
+
+                    log.accept("Start a thread for session " + sessionNum++);
+                    sessions.execute(new HandleASessionPVP(player1, player2));
+                } else
+                {
+                    //the player asks for a difficulty and is told the level they got
+                    Connect4Difficulty difficulty = Connect4Difficulty.negotiate(fromPlayer1.readInt(), maxDifficulty);
+                    toPlayer1.writeInt(difficulty.getLevel());
+                    toPlayer1.flush();
+                    log.accept("Start a thread for session " + sessionNum++ + " at difficulty " + difficulty);
+                    log.accept(String.format("Computer workers busy %d/%d, queue depth %d, average wait %.1f ms, max wait %.1f ms",
+                            computerPool.getActiveWorkers(), computerPool.getWorkers(), computerPool.getQueueDepth(),
+                            computerPool.getAverageWaitMillis(), computerPool.getMaxWaitMillis()));
+                    sessions.execute(new HandleASessionPVC(player1, difficulty));
                 }
-            } catch (IOException e)
+            }
+        } catch (IOException e)
+        {
+            if (!serverSocket.isClosed())
             {
                 e.printStackTrace();
             }
-        }).start();
+        }
+    }
+
+    /**
+     * Creates the computer player for a player vs computer session, set up from the server's system properties
+     *
+     * @param difficulty level the player was given
+     * @return computer player that ponders on the shared pool
+     */
+    Connect4ComputerPlayer createComputer(Connect4Difficulty difficulty)
+    {
+        Connect4ComputerPlayer computer = difficulty.createPlayer(sharedSolver);
+        if (difficulty == Connect4Difficulty.EXPERT)
+        {
+            computer.setTimeBudget(computerTimeBudget);
+        }
+        if (difficulty.compareTo(Connect4Difficulty.HARD) >= 0)
+        {
+            computer.setOpeningBook(openingBook);
+        }
+        computer.setPonderExecutor(computerPool.getPonderExecutor());
+        return computer;
+    }
+
+    /**
+     * Loads the opening book named by the connect4.openingBook system property. The book is
+     * memory-mapped once and shared by every player vs computer session.
+     *
+     * @return the opening book, or null if no book is configured or it cannot be read
+     */
+    private static Connect4OpeningBook loadOpeningBook()
+    {
+        String path = System.getProperty("connect4.openingBook");
+        if (path == null)
+        {
+            return null;
+        }
+        try
+        {
+            return Connect4OpeningBook.open(Paths.get(path));
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+            return null;
+        }
     }
 
     /**
@@ -125,54 +268,31 @@ public class Connect4Server extends Application implements Connect4Constants
             int turn = 1;
             try
             {
-                DataInputStream fromPlayer1 = new DataInputStream(player1.getInputStream());
-                DataOutputStream toPlayer1 = new DataOutputStream(player1.getOutputStream());
-                DataInputStream fromPlayer2 = new DataInputStream(player2.getInputStream());
-                DataOutputStream toPlayer2 = new DataOutputStream(player2.getOutputStream());
+                DataInputStream fromPlayer1 = new DataInputStream(new BufferedInputStream(player1.getInputStream(), STREAM_BUFFER_BYTES));
+                DataOutputStream toPlayer1 = new DataOutputStream(new BufferedOutputStream(player1.getOutputStream(), STREAM_BUFFER_BYTES));
+                DataInputStream fromPlayer2 = new DataInputStream(new BufferedInputStream(player2.getInputStream(), STREAM_BUFFER_BYTES));
+                DataOutputStream toPlayer2 = new DataOutputStream(new BufferedOutputStream(player2.getOutputStream(), STREAM_BUFFER_BYTES));
                 toPlayer1.writeInt(PLAYER1);
+                toPlayer1.flush();
 
                 while (true)
                 {
                     if (game.getCurPlayer() == game.getPlayer1())
                     {
                         validatePlayerMove(game,fromPlayer1,toPlayer1);
-                        send.sendMoveToBothPlayers(toPlayer1,toPlayer2, game.getColDrop(), game.getRowDrop(), true,false);
-                        if (game.winner(game.getPlayer1Token()))
-                        {
-                            send.sendStatusToBothPlayers(toPlayer1,toPlayer2,PLAYER1WIN);
-                            break;
-                        } else if (game.winner(game.getPlayer2Token()))
-                        {
-                            send.sendStatusToBothPlayers(toPlayer1,toPlayer2,PLAYER2WIN);
-                            break;
-                        } else if (game.tieGame())
+                        send.sendMoveToBothPlayers(toPlayer1,toPlayer2, game.getColDrop(), game.getRowDrop(), true,false, game.getStatus());
+                        if (game.isGameOver())
                         {
-                            send.sendStatusToBothPlayers(toPlayer1,toPlayer2,TIEGAME);
                             break;
-                        } else
-                        {
-                            send.sendStatusToBothPlayers(toPlayer1,toPlayer2,CONTINUE);
                         }
                     }
                     if (game.getCurPlayer() == game.getPlayer2())
                     {
                         validatePlayerMove(game,fromPlayer2,toPlayer2);
-                        send.sendMoveToBothPlayers(toPlayer1,toPlayer2, game.getColDrop(), game.getRowDrop(), false,true);
-                        if (game.winner(game.getPlayer2Token()))
-                        {
-                            send.sendStatusToBothPlayers(toPlayer1,toPlayer2,PLAYER2WIN);
-                            break;
-                        } else if (game.winner(game.getPlayer1Token()))
-                        {
-                            send.sendStatusToBothPlayers(toPlayer1,toPlayer2,PLAYER1WIN);
-                            break;
-                        } else if (game.tieGame())
+                        send.sendMoveToBothPlayers(toPlayer1,toPlayer2, game.getColDrop(), game.getRowDrop(), false,true, game.getStatus());
+                        if (game.isGameOver())
                         {
-                            send.sendStatusToBothPlayers(toPlayer1,toPlayer2,TIEGAME);
                             break;
-                        } else
-                        {
-                            send.sendStatusToBothPlayers(toPlayer1,toPlayer2,CONTINUE);
                         }
                     }
                 }
@@ -191,23 +311,29 @@ public class Connect4Server extends Application implements Connect4Constants
         private final Socket player1;
         private final Connect4 game;
         private final Connect4ComputerPlayer computer;
-        Exception exception;
+        private final Connect4ComputerPool.Session computerSession;
+        private final Connect4Difficulty difficulty;
 
         /**
-         * Constructor initializing one player, a computer player, and a connect4 game
+         * Constructor initializing one player, a computer player, and a connect4 game. The computer's moves are
+         * computed on the server's shared pool of workers.
          * @param player1 player one
+         * @param difficulty level player one asked for, which sets how hard the computer searches
          */
-        public HandleASessionPVC(Socket player1)
+        public HandleASessionPVC(Socket player1, Connect4Difficulty difficulty)
         {
             this.player1 = player1;
-            computer = new Connect4ComputerPlayer();
+            this.difficulty = difficulty;
+            computer = createComputer(difficulty);
+            computerSession = computerPool.openSession();
             game = new Connect4();
         }
 
         /**
          * Handles a player vs computer game. Gets the column selection from player one and places it in the connect4 game to determine the correct
          * placement of the player piece and the status of the game. It also gets the move from the computer and does the same. It sends the placement
-         * of the piece and the status of the game to player one.
+         * of the piece and the status of the game to player one. While player one thinks, the computer ponders their move
+         * at difficulties that allow it, unless the connect4.ponder system property is false.
          */
         @Override
         public void run()
@@ -215,103 +341,75 @@ public class Connect4Server extends Application implements Connect4Constants
             int turn = 1;
             try
             {
-                DataInputStream fromPlayer1 = new DataInputStream(player1.getInputStream());
-                DataOutputStream toPlayer1 = new DataOutputStream(player1.getOutputStream());
+                DataInputStream fromPlayer1 = new DataInputStream(new BufferedInputStream(player1.getInputStream(), STREAM_BUFFER_BYTES));
+                DataOutputStream toPlayer1 = new DataOutputStream(new BufferedOutputStream(player1.getOutputStream(), STREAM_BUFFER_BYTES));
                 int colSelection;
 
                 while (true)
                 {
                     if (game.getCurPlayer() == game.getPlayer1())
                     {
-                        validatePlayerMove(game,fromPlayer1,toPlayer1);
-                        send.sendToPlayer(toPlayer1, game.getColDrop(), game.getRowDrop(), true);
-
-                        if (game.winner(game.getPlayer1Token()))
-                        {
-                            toPlayer1.writeInt(PLAYER1WIN);
-                            break;
-                        } else if (game.winner(game.getPlayer2Token()))
+                        if (computerPonders && difficulty.ponders())
                         {
-                            toPlayer1.writeInt(PLAYER2WIN);
-                            break;
-                        } else if (game.tieGame())
+                            computer.ponder(game.getBoard(), game.getCurPlayer()); //think while player one does
+                        }
+                        validatePlayerMove(game,fromPlayer1,toPlayer1);
+                        send.sendToPlayer(toPlayer1, game.getColDrop(), game.getRowDrop(), true, game.getStatus());
+                        if (game.isGameOver())
                         {
-                            toPlayer1.writeInt(TIEGAME);
                             break;
-                        } else
-                        {
-                            toPlayer1.writeInt(CONTINUE);
                         }
                     }
 
                     if (game.getCurPlayer() == game.getPlayer2())
                     {
-                        do
-                        {
-                            exception = null;
-                            try
-                            {
-                                colSelection = computer.chooseRandomCol();
-                                game.player2Turn(colSelection);
-                            } catch (ArrayIndexOutOfBoundsException e)
-                            {
-                                exception = e;
-                            }
-
-                        } while(exception != null);
-
-                        send.sendToPlayer(toPlayer1, game.getColDrop(), game.getRowDrop(), false);
-                        if (game.winner(game.getPlayer2Token()))
-                        {
-                            toPlayer1.writeInt(PLAYER2WIN);
-                            break;
-                        } else if (game.winner(game.getPlayer1Token()))
-                        {
-                            toPlayer1.writeInt(PLAYER1WIN);
-                            break;
-                        } else if (game.tieGame())
+                        colSelection = computerSession.chooseCol(computer, game);
+                        game.play(colSelection);
+
+                        send.sendToPlayer(toPlayer1, game.getColDrop(), game.getRowDrop(), false, game.getStatus());
+                        if (game.isGameOver())
                         {
-                            toPlayer1.writeInt(TIEGAME);
                             break;
-                        } else
-                        {
-                            toPlayer1.writeInt(CONTINUE);
                         }
                     }
                 }
             } catch (IOException ex)
             {
                 ex.printStackTrace();
+            } catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            } finally
+            {
+                computer.shutdown();
             }
         }
     }
 
+    /**
+     * Reads column selections from a player until one is valid and plays it. A refused column is answered right away,
+     * while the answer to the valid one stays in the buffer and goes out in the same write as the move frame.
+     *
+     * @param game game to play the move in
+     * @param fromPlayer player to read from
+     * @param toPlayer buffered stream to the same player
+     * @throws IOException if the player disconnects
+     */
     public void validatePlayerMove(Connect4 game, DataInputStream fromPlayer, DataOutputStream toPlayer) throws IOException
     {
-        Exception exception;
         int column;
         boolean validMove;
 
         do
         {
-            exception = null;
-            try
-            {
-                column = fromPlayer.readInt(); //Get column selection from player
-                if(game.getCurPlayer() == PLAYER1)
-                    game.player1Turn(column); //attempt to place the piece in the selected column of the game
-                else
-                    game.player2Turn(column);
-                validMove = true; //the move is valid
-                toPlayer.writeBoolean(validMove); //let player know their move is valid and the piece can be placed onto the game board
-            } catch (ArrayIndexOutOfBoundsException e)
+            column = fromPlayer.readInt(); //Get column selection from player
+            validMove = game.play(column) != INVALIDMOVE; //attempt to place the piece in the selected column of the game
+            toPlayer.writeBoolean(validMove); //let player know if the piece was placed or if they need to pick a different column
+            if (!validMove)
             {
-                exception = e;
-                validMove = false; //The move is not valid
-                toPlayer.writeBoolean(validMove); //Let player know the piece cannot be placed into the desired column and to pick a different column
+                toPlayer.flush();
             }
-
-        } while(exception != null);
+        } while(!validMove);
     }
 
     /**
@@ -320,7 +418,7 @@ public class Connect4Server extends Application implements Connect4Constants
     static class sendData
     {
         /**
-         * Sends the current piece placement to both players
+         * Sends the current piece placement and game status to both players
          *
          * @param player1 player one
          * @param player2 player two
@@ -328,32 +426,14 @@ public class Connect4Server extends Application implements Connect4Constants
          * @param row row the piece is placed into
          * @param player1Piece the current piece: true if player one piece, false if not
          * @param player2Piece the current piece: true if player two piece, false if not
-         */
-        public void sendMoveToBothPlayers(DataOutputStream player1, DataOutputStream player2, int col, int row, boolean player1Piece, boolean player2Piece)
-        {
-            try
-            {
-                sendToPlayer(player1, col, row, player1Piece);
-                sendToPlayer(player2, col, row, player2Piece);
-            } catch(IOException e)
-            {
-                e.printStackTrace();
-            }
-        }
-
-        /**
-         * Sends the current game status to both players
-         *
-         * @param player1 player one
-         * @param player2 player two
          * @param status current game status
          */
-        private void sendStatusToBothPlayers( DataOutputStream player1, DataOutputStream player2, int status)
+        public void sendMoveToBothPlayers(DataOutputStream player1, DataOutputStream player2, int col, int row, boolean player1Piece, boolean player2Piece, int status)
         {
             try
             {
-                player1.writeInt(status);
-                player2.writeInt(status);
+                sendToPlayer(player1, col, row, player1Piece, status);
+                sendToPlayer(player2, col, row, player2Piece, status);
             } catch(IOException e)
             {
                 e.printStackTrace();
@@ -361,19 +441,23 @@ public class Connect4Server extends Application implements Connect4Constants
         }
 
         /**
-         * Sends the current piece placement to a specified player
+         * Sends the current piece placement and game status to a specified player as one frame of MOVE_FRAME_BYTES.
+         * The stream is expected to be buffered, so the frame leaves in a single write when it is flushed.
          *
          * @param player player to send the placement info to
          * @param col column the piece is being placed in
          * @param row row the piece is being placed in
          * @param myPiece the current piece: true if player's piece, false if not
+         * @param status current game status
          * @throws IOException
          */
-        private void sendToPlayer(DataOutputStream player, int col, int row, boolean myPiece) throws IOException
+        private void sendToPlayer(DataOutputStream player, int col, int row, boolean myPiece, int status) throws IOException
         {
             sendCol(player, col);
             sendRow(player, row);
             player.writeBoolean(myPiece);
+            player.writeInt(status);
+            player.flush();
         }
 
         /**
@@ -0,0 +1,451 @@
+package core;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Solves Connect4 positions exactly. A position is described by two longs laid out like Connect4BitBoard: the
+ * pieces of the player to move and every occupied cell. Playing a move only changes those two values, so the
+ * search passes them down by value and never allocates.
+ *
+ * Scores follow the usual convention for solved Connect4. A position the player to move wins scores 22 minus the
+ * number of pieces that player has once the winning piece is placed, so faster wins score higher. A loss is the
+ * negative of the opponent's winning score and a draw scores 0. pliesToEnd() turns a score into the number of
+ * moves left in the game.
+ *
+ * The search narrows the score with null-window searches, skips moves that hand the opponent an immediate win,
+ * tries the center columns and moves that create the most threats first, and remembers bounds in a table. A solver
+ * is not thread-safe; use one per thread. Solvers on different threads can share one table, since every entry is a
+ * single long holding its own key and is read and written atomically.
+ *
+ * @author Chris Burdett
+ * @version 1.0
+ */
+public class Connect4Solver implements Connect4Constants
+{
+    public static final int WIDTH = Connect4BitBoard.WIDTH;
+    public static final int HEIGHT = Connect4BitBoard.HEIGHT;
+    public static final int MIN_SCORE = -(WIDTH * HEIGHT) / 2 + 3;
+    public static final int MAX_SCORE = (WIDTH * HEIGHT + 1) / 2 - 3;
+    public static final long DEFAULT_TABLE_BYTES = 64L * 1024 * 1024;
+
+    //columns from the center out
+    private static final int[] COLUMN_ORDER = columnOrder();
+    //opaque access keeps each entry whole when solvers on other threads write the same slot
+    private static final VarHandle ENTRIES = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] table;
+    private final int tableShift;
+    private final long[][] sortedMoves;
+    private final int[][] sortedScores;
+    private long nodes;
+    private int bestScore;
+
+    /**
+     * Create a solver with the default table size
+     */
+    public Connect4Solver()
+    {
+        this(DEFAULT_TABLE_BYTES);
+    }
+
+    /**
+     * Create a solver whose table uses about a given amount of memory. The number of entries is rounded
+     * down to a power of two.
+     *
+     * @param tableBytes memory budget for the table in bytes
+     */
+    public Connect4Solver(long tableBytes)
+    {
+        int bits = 63 - Long.numberOfLeadingZeros(Math.max(2L, Math.min(tableBytes / Long.BYTES, 1L << 28)));
+        table = new long[1 << bits];
+        tableShift = 64 - bits;
+        sortedMoves = new long[WIDTH * HEIGHT + 1][WIDTH];
+        sortedScores = new int[WIDTH * HEIGHT + 1][WIDTH];
+    }
+
+    /**
+     * Create a solver that shares the table of another solver, so positions one solves are known to the other.
+     * Each solver must still be used by one thread at a time.
+     *
+     * @param shared solver whose table to use
+     */
+    public Connect4Solver(Connect4Solver shared)
+    {
+        table = shared.table;
+        tableShift = shared.tableShift;
+        sortedMoves = new long[WIDTH * HEIGHT + 1][WIDTH];
+        sortedScores = new int[WIDTH * HEIGHT + 1][WIDTH];
+    }
+
+    /**
+     * Builds the order in which columns are tried, from the center out
+     *
+     * @return column indexes, starting at 0
+     */
+    private static int[] columnOrder()
+    {
+        int[] order = new int[WIDTH];
+        for (int i = 0; i < WIDTH; i++)
+        {
+            order[i] = WIDTH / 2 + (1 - 2 * (i % 2)) * (i + 1) / 2;
+        }
+        return order;
+    }
+
+    /**
+     * Solve the position for the player whose turn it is in a game
+     *
+     * @param game game to solve
+     * @return exact score for the player to move
+     */
+    public int solve(Connect4 game)
+    {
+        return solve(game.getBoard(), game.getCurPlayer());
+    }
+
+    /**
+     * Solve a position. The player to move must not already have four in a row against them.
+     *
+     * @param board standard board to solve
+     * @param player player about to move
+     * @return exact score for the player to move
+     * @throws IllegalArgumentException if the board is not the standard 7 by 6, four in a row board
+     */
+    public int solve(Connect4BitBoard board, int player)
+    {
+        checkStandard(board);
+        return solve(board.getStones(player), board.getMask());
+    }
+
+    /**
+     * Makes sure a board is one the solver's bitboard arithmetic works on
+     *
+     * @param board board to check
+     * @throws IllegalArgumentException if the board is not the standard 7 by 6, four in a row board
+     */
+    private static void checkStandard(Connect4BitBoard board)
+    {
+        if (!board.getGeometry().isStandard())
+        {
+            throw new IllegalArgumentException("only the standard board can be solved, not " + board.getGeometry());
+        }
+    }
+
+    /**
+     * Solve a position given as bitboards
+     *
+     * @param current pieces of the player to move
+     * @param mask every occupied cell
+     * @return exact score for the player to move
+     */
+    public int solve(long current, long mask)
+    {
+        nodes = 0;
+        int moves = Long.bitCount(mask);
+        if ((Connect4BitBoard.winningCells(current, mask) & possible(mask)) != 0)
+        {
+            return (WIDTH * HEIGHT + 1 - moves) / 2;
+        }
+
+        int min = -(WIDTH * HEIGHT - moves) / 2;
+        int max = (WIDTH * HEIGHT + 1 - moves) / 2;
+        while (min < max)
+        {
+            //null-window searches that narrow the range, trying scores close to 0 first
+            int med = min + (max - min) / 2;
+            if (med <= 0 && min / 2 < med)
+            {
+                med = min / 2;
+            } else if (med >= 0 && max / 2 > med)
+            {
+                med = max / 2;
+            }
+            int score = negamax(current, mask, moves, med, med + 1);
+            if (score <= med)
+            {
+                max = score;
+            } else
+            {
+                min = score;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Find the best column for a player by solving the position after each move
+     *
+     * @param board standard board to choose a move for
+     * @param player player about to move
+     * @return best column, starting at 0, or -1 if the board is full
+     * @throws IllegalArgumentException if the board is not the standard 7 by 6, four in a row board
+     */
+    public int bestMove(Connect4BitBoard board, int player)
+    {
+        checkStandard(board);
+        long current = board.getStones(player);
+        long mask = board.getMask();
+        long totalNodes = 0;
+        int bestCol = -1;
+        bestScore = Integer.MIN_VALUE;
+
+        for (int col : COLUMN_ORDER)
+        {
+            if (!board.canPlay(col))
+            {
+                continue;
+            }
+            long move = (mask + Connect4BitBoard.bottomMask(col)) & Connect4BitBoard.columnMask(col);
+            if (Connect4BitBoard.connectsFour(current | move, col, board.getHeight(col)))
+            {
+                bestScore = (WIDTH * HEIGHT + 1 - board.getMoveCount()) / 2;
+                nodes = totalNodes;
+                return col;
+            }
+            int score = -solve(current ^ mask, mask | move);
+            totalNodes += nodes;
+            if (score > bestScore)
+            {
+                bestScore = score;
+                bestCol = col;
+            }
+        }
+        nodes = totalNodes;
+        return bestCol;
+    }
+
+    /**
+     * Get the number of moves left in the game when both players play perfectly
+     *
+     * @param moveCount number of pieces on the board
+     * @param score score returned by solve
+     * @return number of pieces still to be played, including the last one
+     */
+    public static int pliesToEnd(int moveCount, int score)
+    {
+        if (score == 0)
+        {
+            return WIDTH * HEIGHT - moveCount;
+        }
+        //the winner places the deciding piece when the board holds 42 or 43 minus twice the score, whichever
+        //has the parity of the winner's turns
+        int winnerParity = score > 0 ? moveCount & 1 : (moveCount + 1) & 1;
+        int before = WIDTH * HEIGHT + 1 - 2 * Math.abs(score);
+        if ((before & 1) != winnerParity)
+        {
+            before--;
+        }
+        return before - moveCount + 1;
+    }
+
+    /**
+     * Get the score of the move returned by the last call to bestMove
+     *
+     * @return exact score for the player that moved
+     */
+    public int getBestScore()
+    {
+        return bestScore;
+    }
+
+    /**
+     * Get the number of positions visited by the last call to solve or bestMove
+     *
+     * @return number of positions visited
+     */
+    public long getNodes()
+    {
+        return nodes;
+    }
+
+    /**
+     * Remove every entry from the solver's table
+     */
+    public void reset()
+    {
+        Arrays.fill(table, 0L);
+    }
+
+    /**
+     * Scores a position within a window. Scores outside the window only tell which side of it they are on.
+     *
+     * @param current pieces of the player to move
+     * @param mask every occupied cell
+     * @param moves number of pieces on the board
+     * @param alpha lower end of the window
+     * @param beta upper end of the window
+     * @return score of the position for the player to move
+     */
+    private int negamax(long current, long mask, int moves, int alpha, int beta)
+    {
+        nodes++;
+        long next = possibleNonLosingMoves(current, mask);
+        if (next == 0)
+        {
+            return -(WIDTH * HEIGHT - moves) / 2; //every move lets the opponent win
+        }
+        if (moves >= WIDTH * HEIGHT - 2)
+        {
+            return 0; //neither player can win with the last two pieces
+        }
+
+        int min = -(WIDTH * HEIGHT - 2 - moves) / 2;
+        if (alpha < min)
+        {
+            alpha = min;
+            if (alpha >= beta)
+            {
+                return alpha;
+            }
+        }
+        int max = (WIDTH * HEIGHT - 1 - moves) / 2;
+        if (beta > max)
+        {
+            beta = max;
+            if (alpha >= beta)
+            {
+                return beta;
+            }
+        }
+
+        long key = current + mask;
+        int value = get(key);
+        if (value != 0)
+        {
+            if (value > MAX_SCORE - MIN_SCORE + 1)
+            {
+                min = value + 2 * MIN_SCORE - MAX_SCORE - 2; //lower bound
+                if (alpha < min)
+                {
+                    alpha = min;
+                    if (alpha >= beta)
+                    {
+                        return alpha;
+                    }
+                }
+            } else
+            {
+                max = value + MIN_SCORE - 1; //upper bound
+                if (beta > max)
+                {
+                    beta = max;
+                    if (alpha >= beta)
+                    {
+                        return beta;
+                    }
+                }
+            }
+        }
+
+        //order moves by the number of threats they create, center columns first on ties
+        long[] sorted = sortedMoves[moves];
+        int[] scores = sortedScores[moves];
+        int count = 0;
+        for (int i = WIDTH - 1; i >= 0; i--)
+        {
+            long move = next & Connect4BitBoard.columnMask(COLUMN_ORDER[i]);
+            if (move != 0)
+            {
+                int score = Long.bitCount(Connect4BitBoard.winningCells(current | move, mask));
+                int pos = count++;
+                while (pos > 0 && scores[pos - 1] > score)
+                {
+                    sorted[pos] = sorted[pos - 1];
+                    scores[pos] = scores[pos - 1];
+                    pos--;
+                }
+                sorted[pos] = move;
+                scores[pos] = score;
+            }
+        }
+
+        for (int i = count - 1; i >= 0; i--)
+        {
+            long move = sorted[i];
+            int score = -negamax(current ^ mask, mask | move, moves + 1, -beta, -alpha);
+            if (score >= beta)
+            {
+                put(key, score + MAX_SCORE - 2 * MIN_SCORE + 2);
+                return score;
+            }
+            if (score > alpha)
+            {
+                alpha = score;
+            }
+        }
+
+        put(key, alpha - MIN_SCORE + 1);
+        return alpha;
+    }
+
+    /**
+     * Get the cells a piece can be dropped into
+     *
+     * @param mask every occupied cell
+     * @return lowest empty cell of every column that is not full
+     */
+    private static long possible(long mask)
+    {
+        return (mask + Connect4BitBoard.BOTTOM_MASK) & Connect4BitBoard.BOARD_MASK;
+    }
+
+    /**
+     * Get the moves that do not let the opponent win on their next turn. The player to move must not be
+     * able to win right away.
+     *
+     * @param current pieces of the player to move
+     * @param mask every occupied cell
+     * @return cells that can be played without losing next turn, 0 if every move loses
+     */
+    private static long possibleNonLosingMoves(long current, long mask)
+    {
+        long possible = possible(mask);
+        long opponentWin = Connect4BitBoard.winningCells(current ^ mask, mask);
+        long forced = possible & opponentWin;
+        if (forced != 0)
+        {
+            if ((forced & (forced - 1)) != 0)
+            {
+                return 0; //the opponent has two winning moves
+            }
+            possible = forced;
+        }
+        return possible & ~(opponentWin >>> 1); //don't play right below a cell the opponent wins on
+    }
+
+    /**
+     * Look up a position in the table. Each entry holds the key in the high bits and the value in the low byte.
+     *
+     * @param key key of the position, current + mask
+     * @return stored value, or 0 if the position is not in the table
+     */
+    private int get(long key)
+    {
+        long entry = (long) ENTRIES.getOpaque(table, index(key));
+        return (entry >>> 8) == key ? (int) (entry & 0xFF) : 0;
+    }
+
+    /**
+     * Store a value for a position, replacing whatever was in its slot
+     *
+     * @param key key of the position, current + mask
+     * @param value bound to store, 1 to 255
+     */
+    private void put(long key, int value)
+    {
+        ENTRIES.setOpaque(table, index(key), (key << 8) | value);
+    }
+
+    /**
+     * Get the table slot for a position
+     *
+     * @param key key of the position
+     * @return index into the table
+     */
+    private int index(long key)
+    {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> tableShift);
+    }
+}
@@ -0,0 +1,172 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size table of search results indexed by position hash. The table is allocated once and can be shared by
+ * any number of search threads without locks.
+ *
+ * Every slot is two longs: the position key XORed with the entry, and the entry itself. Two threads writing the
+ * same slot at once can leave a key from one write next to the entry from the other. The XOR no longer matches
+ * the key in that case, so probe() treats the slot as empty instead of returning a wrong result.
+ *
+ * Slots are grouped in buckets of two. The first slot keeps the deepest result seen for its positions and the
+ * second slot always takes the newest result.
+ *
+ * @author Chris Burdett
+ * @version 1.0
+ */
+public class Connect4TranspositionTable
+{
+    public static final int EXACT = 0; // Indicate the score is exact
+    public static final int LOWER = 1; // Indicate the score is a lower bound
+    public static final int UPPER = 2; // Indicate the score is an upper bound
+    public static final int NO_MOVE = 0xF; // Indicate there is no best move stored
+    public static final long MISS = 0L; // Returned by probe when the position is not in the table
+
+    private static final int BUCKET_LONGS = 4;
+    private static final long MAX_BUCKETS = 1L << 28;
+    private static final long OCCUPIED = 1L << 46;
+
+    private final long[] slots;
+    private final long bucketMask;
+
+    /**
+     * Create a table that uses about a given amount of memory. The number of buckets is rounded down to a
+     * power of two.
+     *
+     * @param bytes memory budget for the table in bytes
+     */
+    public Connect4TranspositionTable(long bytes)
+    {
+        long buckets = Math.max(1L, bytes / (BUCKET_LONGS * Long.BYTES));
+        buckets = Math.min(Long.highestOneBit(buckets), MAX_BUCKETS);
+        slots = new long[(int) buckets * BUCKET_LONGS];
+        bucketMask = buckets - 1;
+    }
+
+    /**
+     * Look up a position
+     *
+     * @param key hash of the position
+     * @return the stored entry, or MISS if the position is not in the table
+     */
+    public long probe(long key)
+    {
+        int index = (int) (key & bucketMask) * BUCKET_LONGS;
+        for (int i = index; i < index + BUCKET_LONGS; i += 2)
+        {
+            long entry = slots[i + 1];
+            if ((slots[i] ^ entry) == key && entry != MISS)
+            {
+                return entry;
+            }
+        }
+        return MISS;
+    }
+
+    /**
+     * Store the result of searching a position
+     *
+     * @param key hash of the position
+     * @param score score of the position for the player to move
+     * @param depth number of moves searched below the position
+     * @param bound EXACT, LOWER or UPPER
+     * @param bestMove best column found, starting at 0, or NO_MOVE
+     */
+    public void store(long key, int score, int depth, int bound, int bestMove)
+    {
+        long entry = pack(score, depth, bound, bestMove);
+        int index = (int) (key & bucketMask) * BUCKET_LONGS;
+
+        long deepEntry = slots[index + 1];
+        boolean sameKey = (slots[index] ^ deepEntry) == key;
+        if (sameKey || deepEntry == MISS || depth >= depth(deepEntry))
+        {
+            slots[index] = key ^ entry;
+            slots[index + 1] = entry;
+        } else
+        {
+            slots[index + 2] = key ^ entry;
+            slots[index + 3] = entry;
+        }
+    }
+
+    /**
+     * Remove every entry from the table
+     */
+    public void clear()
+    {
+        Arrays.fill(slots, 0L);
+    }
+
+    /**
+     * Get the number of entries the table can hold
+     *
+     * @return number of slots in the table
+     */
+    public int capacity()
+    {
+        return slots.length / 2;
+    }
+
+    /**
+     * Packs the parts of a search result into a single entry. Bits 0-31 hold the score, 32-39 the depth,
+     * 40-41 the bound, 42-45 the best move and bit 46 marks the entry as used.
+     *
+     * @param score score of the position
+     * @param depth number of moves searched
+     * @param bound EXACT, LOWER or UPPER
+     * @param bestMove best column or NO_MOVE
+     * @return packed entry
+     */
+    private static long pack(int score, int depth, int bound, int bestMove)
+    {
+        return (score & 0xFFFFFFFFL) | ((long) (depth & 0xFF) << 32) | ((long) bound << 40)
+                | ((long) (bestMove & 0xF) << 42) | OCCUPIED;
+    }
+
+    /**
+     * Get the score of an entry
+     *
+     * @param entry entry returned by probe
+     * @return score of the position
+     */
+    public static int score(long entry)
+    {
+        return (int) entry;
+    }
+
+    /**
+     * Get the depth of an entry
+     *
+     * @param entry entry returned by probe
+     * @return number of moves searched
+     */
+    public static int depth(long entry)
+    {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    /**
+     * Get the bound of an entry
+     *
+     * @param entry entry returned by probe
+     * @return EXACT, LOWER or UPPER
+     */
+    public static int bound(long entry)
+    {
+        return (int) (entry >>> 40) & 0x3;
+    }
+
+    /**
+     * Get the best move of an entry
+     *
+     * @param entry entry returned by probe
+     * @return best column, starting at 0, or NO_MOVE
+     */
+    public static int bestMove(long entry)
+    {
+        return (int) (entry >>> 42) & 0xF;
+    }
+}
@@ -1,11 +1,38 @@
 package test;
 
 import core.Connect4;
+import core.Connect4Arena;
+import core.Connect4BitBoard;
 import core.Connect4ComputerPlayer;
+import core.Connect4ComputerPool;
 import core.Connect4Constants;
+import core.Connect4Difficulty;
+import core.Connect4Evaluator;
+import core.Connect4Geometry;
+import core.Connect4MonteCarloPlayer;
+import core.Connect4NioServer;
+import core.Connect4OpeningBook;
+import core.Connect4OpeningBookBuilder;
+import core.Connect4Perft;
+import core.Connect4Position;
+import core.Connect4Solver;
+import core.Connect4TranspositionTable;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 
@@ -112,6 +139,91 @@ public class Connect4Testing implements Connect4Constants
         }
     }
 
+    @Test
+    void playInvalidColumn()
+    {
+        assertEquals(INVALIDMOVE, game.play(0));
+        assertEquals(INVALIDMOVE, game.play(COLUMNS + 1));
+        for (int i = 0; i < ROWS; i++)
+        {
+            assertEquals(CONTINUE, game.play(1));
+        }
+        assertEquals(INVALIDMOVE, game.play(1));
+        assertEquals(ROWS + 1, game.getTurn());
+    }
+
+    @Test
+    void legalMoves()
+    {
+        assertEquals((1 << COLUMNS) - 1, game.legalMovesMask());
+        for (int i = 0; i < ROWS; i++)
+        {
+            game.play(3);
+        }
+        assertEquals(((1 << COLUMNS) - 1) & ~(1 << 2), game.legalMovesMask());
+        assertFalse(game.isValid(2));
+    }
+
+    @Test
+    void undoRestoresGame()
+    {
+        assertFalse(game.undo());
+        game.play(4);
+        game.play(4);
+        game.play(5);
+        int turn = game.getTurn();
+        int colDrop = game.getColDrop();
+        int rowDrop = game.getRowDrop();
+        int legalMoves = game.legalMovesMask();
+
+        game.play(5);
+        assertTrue(game.undo());
+        assertEquals(turn, game.getTurn());
+        assertEquals(colDrop, game.getColDrop());
+        assertEquals(rowDrop, game.getRowDrop());
+        assertEquals(legalMoves, game.legalMovesMask());
+        assertEquals(' ', game.getMatrix()[4][4]);
+        assertEquals(3, game.getMoveCount());
+
+        game.play(1);
+        game.play(6);
+        game.play(1);
+        game.play(7);
+        assertEquals(PLAYER1WIN, game.getStatus());
+        assertTrue(game.undo());
+        assertEquals(CONTINUE, game.getStatus());
+        assertFalse(game.winner(PLAYER1TOKEN));
+    }
+
+    @Test
+    void positionHash()
+    {
+        long empty = game.getHash();
+        game.play(1);
+        game.play(2);
+        game.play(3);
+        long hash = game.getHash();
+        assertNotEquals(empty, hash);
+
+        Connect4 other = new Connect4();
+        other.play(3);
+        other.play(2);
+        other.play(1);
+        assertEquals(hash, other.getHash());
+
+        Connect4 mirror = new Connect4();
+        mirror.play(7);
+        mirror.play(6);
+        mirror.play(5);
+        assertNotEquals(hash, mirror.getHash());
+        assertEquals(game.getCanonicalKey(), mirror.getCanonicalKey());
+
+        game.undo();
+        game.undo();
+        game.undo();
+        assertEquals(empty, game.getHash());
+    }
+
     @Test
     void winnerVertical()
     {
@@ -253,6 +365,57 @@ public class Connect4Testing implements Connect4Constants
         assertTrue(game.winner(PLAYER2TOKEN));
     }
 
+    @Test
+    void winnerDoesNotWrapColumns()
+    {
+        game.player1Turn(1);
+        game.player1Turn(1);
+        game.player1Turn(1);
+        game.player2Turn(1);
+        game.player1Turn(1);
+        game.player1Turn(1);
+        game.player1Turn(2);
+        game.player1Turn(2);
+        assertFalse(game.winner(PLAYER1TOKEN));
+        assertFalse(game.winner(PLAYER2TOKEN));
+    }
+
+    @Test
+    void statusAfterLastMove()
+    {
+        assertEquals(CONTINUE, game.getStatus());
+        game.player1Turn(1);
+        game.player2Turn(1);
+        game.player1Turn(2);
+        game.player2Turn(2);
+        game.player1Turn(3);
+        game.player2Turn(3);
+        assertEquals(CONTINUE, game.getStatus());
+        assertFalse(game.isGameOver());
+        game.player1Turn(4);
+        assertEquals(PLAYER1WIN, game.getStatus());
+        assertTrue(game.isGameOver());
+    }
+
+    @Test
+    void statusTieGame()
+    {
+        int[] moves = {7, 6, 6, 3, 5, 1, 5, 1, 2, 2, 3, 6, 6, 7, 4, 4, 6, 7, 1, 6, 5,
+                5, 1, 5, 3, 2, 1, 5, 3, 4, 2, 1, 7, 3, 2, 2, 3, 7, 7, 4, 4, 4};
+        for (int i = 0; i < moves.length; i++)
+        {
+            assertFalse(game.isGameOver());
+            if (i % 2 == 0)
+            {
+                game.player1Turn(moves[i]);
+            } else
+            {
+                game.player2Turn(moves[i]);
+            }
+        }
+        assertEquals(TIEGAME, game.getStatus());
+    }
+
     @Test
     void getCurPlayer()
     {
@@ -311,4 +474,632 @@ public class Connect4Testing implements Connect4Constants
         assertEquals(itr,num);
     }
 
+    @Test
+    void computerTakesWin()
+    {
+        game.play(1);
+        game.play(5);
+        game.play(1);
+        game.play(5);
+        game.play(2);
+        game.play(5);
+        game.play(2);
+        assertEquals(5, computer.chooseCol(game));
+    }
+
+    @Test
+    void computerBlocksWin()
+    {
+        game.play(1);
+        game.play(7);
+        game.play(2);
+        game.play(7);
+        game.play(3);
+        assertEquals(4, computer.chooseCol(game));
+    }
+
+    @Test
+    void computerSearchStatistics()
+    {
+        game.play(4);
+        game.play(3);
+        computer.chooseCol(game);
+        long[] perDepth = computer.getNodesPerDepth();
+        long total = 0;
+        for (long depthNodes : perDepth)
+        {
+            total += depthNodes;
+        }
+        assertEquals(computer.getNodes(), total);
+        assertTrue(perDepth[Connect4ComputerPlayer.DEFAULT_DEPTH] > 0);
+        assertTrue(computer.getCutoffs() > 0);
+        assertTrue(computer.getFirstMoveCutoffs() <= computer.getCutoffs());
+        assertTrue(computer.getFirstMoveCutoffRate() > 0.5);
+    }
+
+    @Test
+    void evaluatorLines()
+    {
+        Connect4Geometry standard = Connect4Geometry.STANDARD;
+        assertEquals(69, standard.getLines().length);
+        assertEquals(3, standard.linesThrough(Connect4BitBoard.bitIndex(0, 0)).length);
+        assertEquals(13, standard.linesThrough(Connect4BitBoard.bitIndex(3, 2)).length);
+
+        Connect4BitBoard board = new Connect4BitBoard();
+        Connect4Evaluator evaluator = new Connect4Evaluator();
+        int empty = evaluator.evaluate(board, PLAYER1);
+        int[] moves = {3, 3, 2, 4, 1, 1, 4};
+        int player = PLAYER1;
+        for (int col : moves)
+        {
+            evaluator.addPiece(Connect4BitBoard.bitIndex(col, board.drop(col, player)), player);
+            player = player == PLAYER1 ? PLAYER2 : PLAYER1;
+        }
+        assertEquals(new Connect4Evaluator(board).evaluate(board, PLAYER1), evaluator.evaluate(board, PLAYER1));
+        assertEquals(-evaluator.evaluate(board, PLAYER1), evaluator.evaluate(board, PLAYER2));
+
+        for (int i = moves.length - 1; i >= 0; i--)
+        {
+            player = player == PLAYER1 ? PLAYER2 : PLAYER1;
+            board.undrop(moves[i]);
+            evaluator.removePiece(Connect4BitBoard.bitIndex(moves[i], board.getHeight(moves[i])), player);
+        }
+        assertEquals(empty, evaluator.evaluate(board, PLAYER1));
+    }
+
+    @Test
+    void oddEvenThreats()
+    {
+        //first player threatens the bottom row, an odd row, and the second player the row above, an even row
+        Connect4BitBoard board = new Connect4BitBoard();
+        board.drop(0, PLAYER1);
+        board.drop(0, PLAYER2);
+        board.drop(1, PLAYER1);
+        board.drop(1, PLAYER2);
+        board.drop(2, PLAYER1);
+        board.drop(2, PLAYER2);
+        assertEquals(1L << Connect4BitBoard.bitIndex(3, 0), Connect4Evaluator.goodThreats(board, PLAYER1));
+        assertEquals(0L, Connect4Evaluator.goodThreats(board, PLAYER2)); //above the first player's threat
+    }
+
+    @Test
+    void largerBoards()
+    {
+        //five in a row on 8 columns by 7 rows, which still fits in one long
+        Connect4 five = new Connect4(new Connect4Geometry(8, 7, 5));
+        assertEquals(7, five.getROWS());
+        assertEquals(8, five.getCOLS());
+        for (int col = 1; col <= 4; col++)
+        {
+            five.play(col);
+            five.play(col);
+        }
+        assertEquals(CONTINUE, five.getStatus()); //four in a row is not enough
+        assertEquals(PLAYER1WIN, five.play(5));
+        assertTrue(five.undo());
+        assertEquals(CONTINUE, five.getStatus());
+        int col = new Connect4ComputerPlayer(4).chooseCol(five);
+        assertEquals(5, col); //take the win
+        five.play(8);
+        assertEquals(5, new Connect4ComputerPlayer(4).chooseCol(five)); //block the win
+
+        //10 columns by 9 rows needs a second long, and the bottom row crosses from one long into the other
+        Connect4Geometry wide = new Connect4Geometry(10, 9, 4);
+        assertFalse(wide.fitsInLong());
+        Connect4 game = new Connect4(wide);
+        for (int c = 5; c <= 7; c++)
+        {
+            game.play(c);
+            game.play(c);
+        }
+        int win = new Connect4ComputerPlayer(4).chooseCol(game);
+        assertTrue(win == 4 || win == 8);
+        assertEquals(PLAYER1WIN, game.play(8));
+        assertTrue(game.getBoard().isWin(PLAYER1));
+        game.undo();
+        assertFalse(game.getBoard().isWin(PLAYER1));
+
+        Connect4BitBoard board = new Connect4BitBoard(wide);
+        assertEquals(board.getHash(), new Connect4BitBoard(new Connect4Geometry(10, 9, 4)).getHash());
+        assertNotEquals(board.getHash(), new Connect4BitBoard().getHash());
+        Connect4MonteCarloPlayer monteCarlo = new Connect4MonteCarloPlayer(10000, 1);
+        monteCarlo.setPlayoutBudget(500);
+        int move = monteCarlo.chooseCol(board, PLAYER1);
+        assertTrue(move >= 1 && move <= 10);
+        monteCarlo.shutdown();
+    }
+
+    @Test
+    void longLinesScoreBelowWins()
+    {
+        //twelve in a row, where only the vertical lines fit, and eighteen in a row, past where an int shift wraps
+        for (Connect4Geometry geometry : new Connect4Geometry[] {
+                new Connect4Geometry(7, 15, 12), new Connect4Geometry(6, 20, 18)})
+        {
+            int winLength = geometry.getWinLength();
+            Connect4BitBoard board = new Connect4BitBoard(geometry);
+            Connect4Evaluator evaluator = new Connect4Evaluator(geometry);
+            int previous = 0;
+            for (int col = 0; col < geometry.getWidth(); col++)
+            {
+                for (int row = 0; row < winLength - 1; row++)
+                {
+                    board.drop(col, PLAYER1);
+                    evaluator.addPiece(geometry.bitIndex(col, row), PLAYER1);
+                    int score = evaluator.evaluate(board, PLAYER1);
+                    assertTrue(score > previous); //a line closer to a win is always worth more
+                    previous = score;
+                }
+            }
+            assertTrue(previous <= Connect4Evaluator.MAX_SCORE);
+            assertTrue(previous < Connect4ComputerPlayer.WIN_SCORE - Connect4ComputerPlayer.MAX_DEPTH);
+            assertEquals(-previous, evaluator.evaluate(board, PLAYER2));
+        }
+    }
+
+    @Test
+    void positionSnapshot()
+    {
+        game.play(4);
+        game.play(4);
+        game.play(3);
+        Connect4Position position = game.getPosition();
+        assertEquals(3, position.getPly());
+        assertEquals(PLAYER2, position.getCurPlayer());
+        assertEquals(PLAYER1TOKEN, position.getToken(3, 0));
+        assertEquals(PLAYER2TOKEN, position.getToken(3, 1));
+        assertEquals(' ', position.getToken(3, 2));
+
+        game.play(5);
+        assertEquals(3, position.getPly()); //the snapshot does not follow the game
+        game.undo();
+        assertEquals(position, game.getPosition());
+        assertEquals(position.hashCode(), game.getPosition().hashCode());
+
+        byte[] bytes = position.toBytes();
+        assertEquals(Connect4Position.BYTES, bytes.length);
+        Connect4Position read = Connect4Position.read(ByteBuffer.wrap(bytes));
+        assertEquals(position, read);
+        assertEquals(3, read.getPly());
+        assertEquals(game.getHash(), read.toBoard().getHash());
+
+        //a piece floating above an empty cell
+        ByteBuffer floating = ByteBuffer.allocate(Connect4Position.BYTES);
+        floating.putLong(1L << Connect4BitBoard.bitIndex(0, 1)).putLong(0L).flip();
+        assertThrows(IllegalArgumentException.class, () -> Connect4Position.read(floating));
+    }
+
+    @Test
+    void perftCounts()
+    {
+        //known counts from the empty board; at depth 7 the 7 sequences that overfill one column are left out
+        long[] known = {1, 7, 49, 343, 2401, 16807, 117649, 823536, 5673234};
+        Connect4Perft perft = new Connect4Perft();
+        Connect4Perft hashed = new Connect4Perft(1 << 20);
+        for (int depth = 0; depth < known.length; depth++)
+        {
+            assertEquals(known[depth], perft.perft(game, depth));
+            assertEquals(known[depth], hashed.perft(game, depth));
+        }
+        ForkJoinPool pool = new ForkJoinPool(2);
+        assertEquals(known[8], hashed.parallelPerft(game.getBoard(), PLAYER1, 8, pool));
+        pool.shutdown();
+
+        //a game that is already won has nothing left to count
+        int[] moves = {1, 2, 1, 2, 1, 2, 1};
+        for (int move : moves)
+        {
+            game.play(move);
+        }
+        assertEquals(0, perft.perft(game, 3));
+    }
+
+    @Test
+    void arenaFavoursDeeperSearch() throws InterruptedException
+    {
+        assertEquals(49, Connect4Arena.openings(2).size());
+        Connect4Arena arena = new Connect4Arena(Connect4Arena.computer("6"), Connect4Arena.computer("1"), 2);
+        Connect4Arena.Result result = arena.play(Connect4Arena.openings(1), 14);
+        assertEquals(14, result.getGames());
+        assertTrue(result.getScore() > 0.5);
+        assertTrue(result.getEloDifference() > 0);
+        assertTrue(result.getEloInterval()[0] <= result.getEloDifference());
+        assertTrue(result.getGamesPerSecond() > 0);
+    }
+
+    @Test
+    void computerPonders() throws InterruptedException
+    {
+        Connect4ComputerPlayer ponderer = new Connect4ComputerPlayer(Connect4ComputerPlayer.MAX_DEPTH,
+                new Connect4TranspositionTable(1 << 20));
+        ponderer.setTimeBudget(1000);
+        game.play(4);
+        game.play(4);
+        ponderer.ponder(game.getBoard(), game.getCurPlayer());
+        assertTrue(ponderer.isPondering());
+        Thread.sleep(1000);
+        game.play(3);
+
+        long start = System.currentTimeMillis();
+        int col = ponderer.chooseCol(game);
+        assertTrue(System.currentTimeMillis() - start < 1000); //the time spent pondering counts against the budget
+        assertFalse(ponderer.isPondering());
+        assertTrue(ponderer.getPonderNodes() > 0);
+        assertTrue(game.isValid(col - 1));
+        assertTrue(ponderer.getPonderMillis() > 0);
+        ponderer.shutdown();
+
+        //a shallow ponder search ends long before the opponent moves, and only its search time is charged
+        Connect4ComputerPlayer shallow = new Connect4ComputerPlayer(2);
+        shallow.ponder(game.getBoard(), game.getCurPlayer());
+        Thread.sleep(500);
+        shallow.stopPondering();
+        assertTrue(shallow.getPonderNodes() > 0);
+        assertTrue(shallow.getPonderMillis() < 500);
+        shallow.shutdown();
+    }
+
+    @Test
+    void computerPoolTakesTurns() throws Exception
+    {
+        Connect4ComputerPool pool = new Connect4ComputerPool(1, 0);
+        Connect4ComputerPool.Session first = pool.openSession();
+        Connect4ComputerPool.Session second = pool.openSession();
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        first.submit(() -> {
+            started.countDown();
+            release.await();
+            return order.add("first 1");
+        });
+        started.await();
+        first.submit(() -> order.add("first 2"));
+        Future<Boolean> last = first.submit(() -> order.add("first 3"));
+        second.submit(() -> order.add("second 1"));
+        assertEquals(3, pool.getQueueDepth());
+        assertEquals(1, pool.getActiveWorkers());
+
+        release.countDown();
+        last.get();
+        assertEquals(List.of("first 1", "second 1", "first 2", "first 3"), order);
+        assertEquals(0, pool.getQueueDepth());
+        assertEquals(4, pool.getCompleted());
+        assertTrue(pool.getMaxWaitMillis() >= pool.getAverageWaitMillis());
+
+        Connect4ComputerPlayer pooled = new Connect4ComputerPlayer(4);
+        pooled.setPonderExecutor(pool.getPonderExecutor());
+        pooled.ponder(game.getBoard(), game.getCurPlayer());
+        assertFalse(pooled.isPondering()); //no ponder threads in this pool
+        pooled.setThreads(2);
+        pooled.ponder(game.getBoard(), game.getCurPlayer());
+        assertFalse(pooled.isPondering()); //still the pool's executor, not a thread of its own
+        pooled.shutdown();
+        pooled.ponder(game.getBoard(), game.getCurPlayer());
+        assertFalse(pooled.isPondering());
+        assertTrue(game.isValid(second.chooseCol(pooled, game) - 1));
+        pool.shutdown();
+    }
+
+    @Test
+    void nioServerPlaysGames() throws Exception
+    {
+        Connect4ComputerPool pool = new Connect4ComputerPool(1, 0);
+        Connect4NioServer server = new Connect4NioServer(0, 2, pool, Connect4Difficulty::createPlayer);
+        server.start();
+
+        //player vs computer: the computer answers every move
+        try (Socket player = new Socket("localhost", server.getPort()))
+        {
+            DataInputStream in = new DataInputStream(player.getInputStream());
+            DataOutputStream out = new DataOutputStream(player.getOutputStream());
+            assertEquals(PLAYER1, in.readInt());
+            out.writeBoolean(true);
+            out.writeBoolean(false);
+            out.writeInt(Connect4Difficulty.EASY.getLevel());
+            assertEquals(Connect4Difficulty.EASY.getLevel(), in.readInt());
+            out.writeInt(4);
+            assertTrue(in.readBoolean());
+            assertEquals(5, in.readInt()); //bottom row
+            assertEquals(3, in.readInt()); //column 4
+            assertTrue(in.readBoolean());
+            assertEquals(CONTINUE, in.readInt());
+            in.readInt();
+            assertTrue(in.readInt() >= 0); //the computer's column
+            assertFalse(in.readBoolean());
+            assertEquals(CONTINUE, in.readInt());
+        }
+
+        //player vs player: player 1 stacks column 1 while player 2 plays column 2
+        try (Socket player1 = new Socket("localhost", server.getPort());
+             Socket player2 = new Socket("localhost", server.getPort()))
+        {
+            DataInputStream in1 = new DataInputStream(player1.getInputStream());
+            DataOutputStream out1 = new DataOutputStream(player1.getOutputStream());
+            DataInputStream in2 = new DataInputStream(player2.getInputStream());
+            DataOutputStream out2 = new DataOutputStream(player2.getOutputStream());
+            assertEquals(PLAYER1, in1.readInt());
+            out1.writeBoolean(false);
+            out1.writeBoolean(true);
+            assertEquals(PLAYER2, in2.readInt());
+            assertFalse(in2.readBoolean());
+            assertEquals(PLAYER1, in1.readInt());
+
+            out1.writeInt(9);
+            assertFalse(in1.readBoolean()); //no column 9
+            for (int turn = 0; turn < 7; turn++)
+            {
+                boolean player1Turn = turn % 2 == 0;
+                (player1Turn ? out1 : out2).writeInt(player1Turn ? 1 : 2);
+                assertTrue((player1Turn ? in1 : in2).readBoolean());
+                int status = turn == 6 ? PLAYER1WIN : CONTINUE;
+                for (DataInputStream in : new DataInputStream[]{in1, in2})
+                {
+                    assertEquals(5 - turn / 2, in.readInt());
+                    assertEquals(player1Turn ? 0 : 1, in.readInt());
+                    assertEquals(player1Turn == (in == in1), in.readBoolean());
+                    assertEquals(status, in.readInt());
+                }
+            }
+            assertEquals(-1, in1.read()); //closed after the last move
+            assertEquals(-1, in2.read());
+        }
+        server.shutdown();
+        pool.shutdown();
+    }
+
+    @Test
+    void nioServerSurvivesFailures() throws Exception
+    {
+        Connect4ComputerPool pool = new Connect4ComputerPool(1, 0);
+        Connect4NioServer server = new Connect4NioServer(0, 1, pool, difficulty -> new Connect4ComputerPlayer(1)
+        {
+            @Override
+            public int chooseCol(Connect4BitBoard board, int player)
+            {
+                throw new IllegalStateException("computer broke");
+            }
+        });
+        server.setLog(message -> { });
+        server.start();
+
+        //the computer fails to move, then the pool is shut down before the computer is asked: both games end
+        for (int game = 0; game < 2; game++)
+        {
+            try (Socket player = new Socket("localhost", server.getPort()))
+            {
+                player.setSoTimeout(10000);
+                DataInputStream in = new DataInputStream(player.getInputStream());
+                DataOutputStream out = new DataOutputStream(player.getOutputStream());
+                assertEquals(PLAYER1, in.readInt());
+                out.writeBoolean(true);
+                out.writeBoolean(false);
+                out.writeInt(Connect4Difficulty.EASY.getLevel());
+                assertEquals(Connect4Difficulty.EASY.getLevel(), in.readInt());
+                out.writeInt(4);
+                assertTrue(in.readBoolean());
+                in.readFully(new byte[MOVE_FRAME_BYTES]);
+                assertEquals(-1, in.read()); //closed instead of waiting forever for the computer
+            }
+            pool.shutdown();
+        }
+
+        //the reactor still serves a player vs player game
+        try (Socket player1 = new Socket("localhost", server.getPort());
+             Socket player2 = new Socket("localhost", server.getPort()))
+        {
+            player1.setSoTimeout(10000);
+            player2.setSoTimeout(10000);
+            DataInputStream in1 = new DataInputStream(player1.getInputStream());
+            DataOutputStream out1 = new DataOutputStream(player1.getOutputStream());
+            DataInputStream in2 = new DataInputStream(player2.getInputStream());
+            assertEquals(PLAYER1, in1.readInt());
+            out1.writeBoolean(true);
+            out1.writeBoolean(true);
+            assertEquals(PLAYER2, in2.readInt());
+            assertTrue(in2.readBoolean());
+            assertEquals(PLAYER1, in1.readInt());
+            out1.writeInt(4);
+            assertTrue(in1.readBoolean());
+            in2.readFully(new byte[MOVE_FRAME_BYTES]);
+        }
+        server.shutdown();
+    }
+
+    @Test
+    void difficultyNegotiation()
+    {
+        assertEquals(Connect4Difficulty.EASY, Connect4Difficulty.negotiate(1, Connect4Difficulty.PERFECT));
+        assertEquals(Connect4Difficulty.HARD, Connect4Difficulty.negotiate(5, Connect4Difficulty.HARD));
+        assertEquals(Connect4Difficulty.DEFAULT, Connect4Difficulty.negotiate(42, Connect4Difficulty.PERFECT));
+        assertEquals(Connect4Difficulty.EASY, Connect4Difficulty.negotiate(42, Connect4Difficulty.EASY));
+        assertNull(Connect4Difficulty.fromLevel(0));
+
+        Connect4ComputerPlayer easy = Connect4Difficulty.EASY.createPlayer();
+        game.play(4);
+        assertTrue(game.isValid(easy.chooseCol(game) - 1));
+        assertTrue(easy.getCompletedDepth() <= 2);
+        assertFalse(easy.isPerfectPlay());
+        assertTrue(Connect4Difficulty.PERFECT.createPlayer().isPerfectPlay());
+    }
+
+    @Test
+    void transpositionTable()
+    {
+        Connect4TranspositionTable table = new Connect4TranspositionTable(1024);
+        long key = game.getHash() ^ 12345L;
+        assertEquals(Connect4TranspositionTable.MISS, table.probe(key));
+
+        table.store(key, -250, 6, Connect4TranspositionTable.LOWER, 3);
+        long entry = table.probe(key);
+        assertEquals(-250, Connect4TranspositionTable.score(entry));
+        assertEquals(6, Connect4TranspositionTable.depth(entry));
+        assertEquals(Connect4TranspositionTable.LOWER, Connect4TranspositionTable.bound(entry));
+        assertEquals(3, Connect4TranspositionTable.bestMove(entry));
+
+        table.clear();
+        assertEquals(Connect4TranspositionTable.MISS, table.probe(key));
+    }
+
+    @Test
+    void computerNodeBudget()
+    {
+        Connect4ComputerPlayer limited = new Connect4ComputerPlayer(Connect4ComputerPlayer.MAX_DEPTH);
+        limited.setNodeBudget(5000);
+        int col = limited.chooseCol(game);
+        assertTrue(game.isValid(col - 1));
+        assertTrue(limited.getNodes() <= 5000);
+        assertTrue(limited.getCompletedDepth() >= 1);
+    }
+
+    @Test
+    void computerTimeBudget()
+    {
+        Connect4ComputerPlayer limited = new Connect4ComputerPlayer(Connect4ComputerPlayer.MAX_DEPTH);
+        limited.setTimeBudget(50);
+        long start = System.currentTimeMillis();
+        int col = limited.chooseCol(game);
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertTrue(game.isValid(col - 1));
+    }
+
+    @Test
+    void computerParallelSearch()
+    {
+        Connect4ComputerPlayer single = new Connect4ComputerPlayer(10, new Connect4TranspositionTable(1 << 20));
+        Connect4ComputerPlayer parallel = new Connect4ComputerPlayer(10, new Connect4TranspositionTable(1 << 20));
+        parallel.setThreads(4);
+        game.play(1);
+        game.play(5);
+        game.play(1);
+        game.play(5);
+        game.play(2);
+        game.play(5);
+        game.play(2);
+        int col = parallel.chooseCol(game);
+        assertEquals(5, col); //player 2 wins in column 5
+        assertEquals(single.chooseCol(game), col);
+        assertEquals(single.getLastScore(), parallel.getLastScore());
+
+        //player 1 forces a win by opening both ends of the bottom row
+        game = new Connect4();
+        game.play(4);
+        game.play(4);
+        game.play(3);
+        game.play(3);
+        int singleCol = single.chooseCol(game);
+        int parallelCol = parallel.chooseCol(game);
+        assertTrue(singleCol == 2 || singleCol == 5);
+        assertTrue(parallelCol == 2 || parallelCol == 5);
+        assertEquals(single.getLastScore(), parallel.getLastScore());
+        parallel.shutdown();
+    }
+
+    @Test
+    void openingBook() throws IOException
+    {
+        Connect4OpeningBookBuilder builder = new Connect4OpeningBookBuilder(2, 6);
+        builder.build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        builder.write(out);
+
+        Connect4OpeningBook book = new Connect4OpeningBook(ByteBuffer.wrap(out.toByteArray()));
+        assertEquals(builder.size(), book.size());
+        assertTrue(book.bestMove(game.getBoard()) >= 0);
+
+        game.play(1);
+        int col = book.bestMove(game.getBoard());
+        Connect4 mirror = new Connect4();
+        mirror.play(COLUMNS);
+        assertEquals(COLUMNS - 1 - col, book.bestMove(mirror.getBoard()));
+
+        game.play(2);
+        game.play(3);
+        assertEquals(Connect4OpeningBook.NOT_FOUND, book.bestMove(game.getBoard()));
+    }
+
+    @Test
+    void solverFindsForcedWin()
+    {
+        Connect4Solver solver = new Connect4Solver(1 << 20);
+        game.play(4);
+        game.play(4);
+        game.play(3);
+        game.play(3);
+        assertEquals(18, solver.solve(game));
+        assertEquals(3, Connect4Solver.pliesToEnd(game.getMoveCount(), 18));
+
+        game.play(2);
+        assertEquals(-18, solver.solve(game));
+        assertEquals(2, Connect4Solver.pliesToEnd(game.getMoveCount(), -18));
+
+        //a solver sharing the table finds most of the position already solved
+        game = new Connect4();
+        for (int col : new int[]{4, 4, 4, 4, 3, 5, 3, 5, 3, 3, 5, 5})
+        {
+            game.play(col);
+        }
+        int score = solver.solve(game);
+        Connect4Solver sharing = new Connect4Solver(solver);
+        assertEquals(score, sharing.solve(game));
+        assertTrue(sharing.getNodes() * 10 < solver.getNodes());
+        Connect4ComputerPlayer perfect = Connect4Difficulty.PERFECT.createPlayer(solver);
+        assertTrue(perfect.isPerfectPlay());
+    }
+
+    @Test
+    void computerPerfectPlay()
+    {
+        Connect4ComputerPlayer perfect = new Connect4ComputerPlayer();
+        perfect.setPerfectPlay(true);
+        assertTrue(perfect.isPerfectPlay());
+        game.play(4);
+        game.play(4);
+        game.play(3);
+        game.play(3);
+        int col = perfect.chooseCol(game);
+        assertTrue(col == 2 || col == 5);
+        assertEquals(18, perfect.getLastScore());
+    }
+
+    @Test
+    void perfectPlaySkipsSearchedBook() throws IOException
+    {
+        Connect4OpeningBookBuilder builder = new Connect4OpeningBookBuilder(4, 2);
+        builder.build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        builder.write(out);
+        Connect4OpeningBook book = new Connect4OpeningBook(ByteBuffer.wrap(out.toByteArray()));
+        assertFalse(book.isSolved());
+
+        Connect4ComputerPlayer perfect = new Connect4ComputerPlayer();
+        perfect.setOpeningBook(book);
+        perfect.setPerfectPlay(true);
+        game.play(4);
+        game.play(4);
+        game.play(3);
+        game.play(3);
+        assertTrue(book.bestMove(game.getBoard()) >= 0);
+        perfect.chooseCol(game);
+        assertEquals(18, perfect.getLastScore()); //solved, not the book's depth 2 score
+    }
+
+    @Test
+    void monteCarloPlayer()
+    {
+        Connect4MonteCarloPlayer mcts = new Connect4MonteCarloPlayer(1 << 12, 2);
+        mcts.setPlayoutBudget(2000);
+        game.play(1);
+        game.play(7);
+        game.play(1);
+        game.play(7);
+        game.play(1);
+        assertEquals(1, mcts.chooseCol(game)); //blocks column 1
+        assertTrue(mcts.getPlayouts() >= 2000);
+        game.play(7);
+        assertEquals(1, mcts.chooseCol(game)); //takes the win in column 1
+        mcts.shutdown();
+    }
+
 }
@@ -359,32 +359,17 @@ public class Connect4GUI extends Application
     {
         if (player == connect4.getPlayer2Token() && pvp == false)
         {
-            Exception exception;
             Circle computerCircle = new Circle(45);
-            do
+            int computerSelection = computer.chooseCol(connect4);
+
+            connect4.player2Turn(computerSelection);
+            computerCircle.setFill(Color.BLACK);
+            if (connect4.winner(player))
             {
-                exception = null;
-                int computerSelection = computer.chooseRandomCol();
-
-                try
-                {
-                    connect4.player2Turn(computerSelection);
-                    computerCircle.setFill(Color.BLACK);
-                    if (connect4.winner(player))
-                    {
-                        displayResult(connect4.getPlayer2Token());
-                    }
-                    board.add(computerCircle, connect4.getRowDrop(), connect4.getColDrop());
-                    switchPlayer();
-
-                } catch (IllegalArgumentException e)
-                {
-                    exception = e;
-                } catch (ArrayIndexOutOfBoundsException e)
-                {
-                    exception = e;
-                }
-            } while (exception != null);
+                displayResult(connect4.getPlayer2Token());
+            }
+            board.add(computerCircle, connect4.getRowDrop(), connect4.getColDrop());
+            switchPlayer();
         }
 
     }
@@ -2,6 +2,7 @@ package ui;
 
 import core.Connect4;
 import core.Connect4ComputerPlayer;
+import core.Connect4Constants;
 import javafx.application.Application;
 
 import java.util.InputMismatchException;
@@ -96,27 +97,17 @@ public class Connect4TextConsole
     }
 
     /**
-     * Gets the value that the computer wishes to drop its piece into. If the column
-     * is full, the computer picks another column. The computer acts as player2 and is
-     * only applicable is player1 chooses to play against the computer
+     * Gets the column that the computer wishes to drop its piece into. The computer
+     * searches ahead for its best move, so the column it picks always has room. The
+     * computer acts as player2 and is only applicable is player1 chooses to play
+     * against the computer
      */
     public void computerTurn()
     {
-        do
-        {
-            exception = null;
-            int computerSelection = computer.chooseRandomCol();
-            System.out.println("Computer's Chooses: " + computerSelection);
-            try
-            {
-                game.player2Turn(computerSelection);
-                showBoard();
-            } catch (ArrayIndexOutOfBoundsException e)
-            {
-                exception = e;
-            }
-
-        } while (exception != null);
+        int computerSelection = computer.chooseCol(game);
+        System.out.println("Computer's Chooses: " + computerSelection);
+        game.play(computerSelection);
+        showBoard();
     }
 
         public void showBoard()
@@ -149,12 +140,14 @@ public class Connect4TextConsole
         if(player == 'O')
             playerNum = 2;
 
-        if (game.tieGame())
+        int status = game.getStatus();
+        if (status == Connect4Constants.TIEGAME)
         {
             System.out.println("This game ended in a tie");
             return true;
         }
-        if (game.winner(player))
+        if ((status == Connect4Constants.PLAYER1WIN && playerNum == 1) ||
+                (status == Connect4Constants.PLAYER2WIN && playerNum == 2))
         {
             System.out.println("Player " + playerNum + " Wins!");
             return true;
@@ -169,7 +162,7 @@ public class Connect4TextConsole
      */
     public void playAgainstPlayer()
     {
-        while (!(game.winner(p1) && !(game.winner(p2) && !(game.tieGame()))))
+        while (!game.isGameOver())
         {
             player1Turn();
             if(showResultIfOver(p1))
@@ -187,7 +180,7 @@ public class Connect4TextConsole
      */
     public void playAgainstComputer()
     {
-        while (!(game.winner(p1)) && !(game.winner(p2) && !(game.tieGame())))
+        while (!game.isGameOver())
         {
             player1Turn();
             if(showResultIfOver(p1))